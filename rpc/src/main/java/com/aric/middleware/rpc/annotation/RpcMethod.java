@@ -0,0 +1,48 @@
+package com.aric.middleware.rpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在服务接口的方法上，单独配置该方法的调用参数，优先级高于 <rpc:consumer> 上的配置
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcMethod {
+    /**
+     * 调用超时时间（毫秒），0 表示使用消费者的配置
+     */
+    int timeout() default 0;
+
+    /**
+     * 对冲请求，只能用于幂等的方法：超过一定时间没有响应时向另一个服务提供方再发一次，取先返回的结果
+     */
+    boolean hedge() default false;
+
+    /**
+     * 对冲的等待时间取该方法最近响应时间的分位数
+     */
+    int hedgePercentile() default 95;
+
+    /**
+     * 对冲请求数占调用数的上限（百分比）
+     */
+    int hedgeBudget() default 5;
+
+    /**
+     * 失败后换一个服务提供方重试的次数，只能用于幂等的方法，只重试连接失败、超时、服务端繁忙和过载
+     */
+    int retries() default 0;
+
+    /**
+     * 重试数占成功调用数的上限（百分比）
+     */
+    int retryBudget() default 10;
+
+    /**
+     * 第一次重试前的退避时间（毫秒），之后每次翻倍，实际等待时间在其一半到全部之间随机
+     */
+    int retryBackoff() default 20;
+}
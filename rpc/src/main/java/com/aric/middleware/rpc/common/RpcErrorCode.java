@@ -0,0 +1,38 @@
+package com.aric.middleware.rpc.common;
+
+public enum RpcErrorCode {
+    SYSTEM_ERROR(600001, "系统错误"),
+    TIMEOUT_ERROR(600002, "调用超时"),
+    SERVER_ERROR(600003, "服务端异常"),
+    METHOD_NOT_FOUND(600004, "服务端未暴露该方法"),
+    SERVER_BUSY(600005, "服务端繁忙"),
+    NO_PROVIDER(600006, "没有可用的服务提供方"),
+    OVERLOAD(600007, "服务端过载"),
+    CLIENT_BUSY(600008, "客户端连接的在途请求已满"),
+    SERIALIZE_ERROR(600009, "序列化异常"),
+    ;
+    private final Integer code;
+    private final String message;
+
+    RpcErrorCode(Integer code, String message) {
+        this.code = code;
+        this.message = message;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public static RpcErrorCode of(int code) {
+        for (RpcErrorCode errorCode : values()) {
+            if (errorCode.code == code) {
+                return errorCode;
+            }
+        }
+        return null;
+    }
+}
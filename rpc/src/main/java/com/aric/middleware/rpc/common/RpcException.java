@@ -0,0 +1,24 @@
+package com.aric.middleware.rpc.common;
+
+public class RpcException extends RuntimeException {
+    private final Integer code;
+
+    public RpcException(RpcErrorCode errorCode) {
+        super(errorCode.getMessage());
+        this.code = errorCode.getCode();
+    }
+
+    public RpcException(RpcErrorCode errorCode, String message) {
+        super(errorCode.getMessage() + ": " + message);
+        this.code = errorCode.getCode();
+    }
+
+    public RpcException(Throwable e) {
+        super(e.getMessage(), e);
+        this.code = RpcErrorCode.SYSTEM_ERROR.getCode();
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+}
@@ -1,8 +1,12 @@
 package com.aric.middleware.rpc.config;
 
+import com.aric.middleware.rpc.network.ServerDispatcher;
+
 public class LocalServer {
     private static String host;
     private static int port;
+    private static String domainSocket; // 服务端实际监听的 Unix domain socket 路径，没有开启时为 null
+    private static ServerDispatcher dispatcher; // 服务方法的派发器，可以从这里获取队列深度、拒绝次数等指标
 
     public static String getHost() {
         return host;
@@ -19,4 +23,27 @@ public class LocalServer {
     public static void setPort(int port) {
         LocalServer.port = port;
     }
+
+    public static String getDomainSocket() {
+        return domainSocket;
+    }
+
+    public static void setDomainSocket(String domainSocket) {
+        LocalServer.domainSocket = domainSocket;
+    }
+
+    /**
+     * 服务提供方是否就是当前 JVM 启动的服务端
+     */
+    public static boolean isLocal(ProviderConfig provider) {
+        return null != host && port == provider.getPort() && host.equals(provider.getHost());
+    }
+
+    public static ServerDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public static void setDispatcher(ServerDispatcher dispatcher) {
+        LocalServer.dispatcher = dispatcher;
+    }
 }
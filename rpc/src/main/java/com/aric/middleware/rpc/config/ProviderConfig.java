@@ -1,10 +1,14 @@
 package com.aric.middleware.rpc.config;
 
+import java.util.Objects;
+
 public class ProviderConfig {
     private String nozzle; // 接口全名
     private String ref; // 接口映射，需要根据这个去 Spring 容器中获取到实际的 Bean
     private String host;
     private int port;
+    private int weight = 100; // 权重，按权重随机时使用
+    private String domainSocket; // 服务端的 Unix domain socket 路径，同一台机器上的消费者优先使用，为空表示没有开启
 
     public String getRef() {
         return ref;
@@ -37,4 +41,34 @@ public class ProviderConfig {
     public void setPort(int port) {
         this.port = port;
     }
+
+    public String getDomainSocket() {
+        return domainSocket;
+    }
+
+    public void setDomainSocket(String domainSocket) {
+        this.domainSocket = domainSocket;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProviderConfig that = (ProviderConfig) o;
+        return port == that.port && weight == that.weight && Objects.equals(nozzle, that.nozzle)
+                && Objects.equals(ref, that.ref) && Objects.equals(host, that.host) && Objects.equals(domainSocket, that.domainSocket);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nozzle, ref, host, port, weight, domainSocket);
+    }
 }
@@ -1,37 +1,69 @@
 package com.aric.middleware.rpc.config;
 
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.ServerDispatcher;
 import com.aric.middleware.rpc.network.ServerSocket;
 import com.aric.middleware.rpc.register.RedisRegistryCenter;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
-public class ServerAutoConfiguration implements ApplicationContextAware {
+public class ServerAutoConfiguration implements ApplicationContextAware, SmartInitializingSingleton {
     @Resource
     private ServerProperties serverProperties;
 
     private final Logger logger = LoggerFactory.getLogger(ServerAutoConfiguration.class);
 
+    private ServerSocket serverSocket;
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         logger.info("初始化注册中心...");
-        RedisRegistryCenter.init("127.0.0.1", 6379);
+        RedisRegistryCenter.init("127.0.0.1", 6379, serverProperties.getRegistrySnapshot(), serverProperties.getRegistryLeaseSeconds());
         logger.info("注册中心初始化完成");
 
-        logger.info("启动服务端...");
-        ServerSocket serverSocket = new ServerSocket(applicationContext, serverProperties.getPort());
-        Thread thread = new Thread(serverSocket);
-        thread.start();
-        while (!serverSocket.isReady()) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+        // kryo、json 只能反序列化允许的类型，服务接口所在的包在暴露和引用时自动加入
+        if (null != serverProperties.getSerializerAllowList()) {
+            for (String prefix : serverProperties.getSerializerAllowList().split(",")) {
+                SerializerFactory.allow(prefix.trim());
             }
         }
-        logger.info("服务端启动完成, 地址: {}:{}", LocalServer.getHost(), LocalServer.getPort());
+        ClientTransport.init(serverProperties);
+
+        logger.info("启动服务端...");
+        ServerDispatcher dispatcher = ServerDispatcher.create(serverProperties);
+        LocalServer.setDispatcher(dispatcher);
+        // 端口绑定完成后才返回，之后注册的服务提供方可以立即被调用
+        serverSocket = new ServerSocket(serverProperties, dispatcher);
+        serverSocket.start();
+        logger.info("服务端启动完成, 地址: {}:{}, 派发模式: {}", LocalServer.getHost(), LocalServer.getPort(), dispatcher.getMode());
+    }
+
+    /**
+     * 所有单例创建完成后，等待消费者提前发起的连接
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            ClientTransport.awaitConnects(serverProperties.getConnectTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        // 先从注册中心注销，消费者不再把请求发过来
+        RedisRegistryCenter.shutdown();
+        if (null != serverSocket) {
+            serverSocket.close();
+        }
+        ClientTransport.shutdown();
     }
 }
@@ -7,6 +7,45 @@ public class ServerProperties {
 
     private String host;  //注册中心地址
     private int port;     //注册中心端口
+    private int clientPoolSize = 2; // 客户端到每个服务端的连接数
+    private int clientIoThreads = 0; // 客户端共享线程组的线程数，0 表示使用 Netty 默认值
+    private int clientAsyncThreads = 16; // 客户端执行重试、对冲请求的线程数，选择连接、等待握手可能阻塞，不占用公共的 ForkJoinPool
+    private int clientAsyncQueueSize = 1024; // 上述线程池的队列长度，队列满时重试、对冲请求以 CLIENT_BUSY 失败
+    private int clientMaxPending = 1024; // 客户端每条连接上在途请求数的上限，连接写缓冲超过高水位时同样暂停写出，0 表示不限制
+    private String clientBackpressure = "wait"; // 客户端连接达到上限时的处理：wait 等待名额（最多等到请求超时），fail 立即以 CLIENT_BUSY 失败
+    private String dispatchMode = "pool"; // 服务方法的执行方式：inline 在 IO 线程上执行，pool 提交到有界线程池，virtual 每个请求一个虚拟线程（Java 21+）
+    private int dispatchThreads = 200; // pool 模式的线程数
+    private int dispatchQueueSize = 1024; // pool 模式的队列长度
+    private String rejectPolicy = "abort"; // 线程池满时的拒绝策略：abort 直接返回服务端繁忙，caller_runs 在 IO 线程上执行
+    private int registryLeaseSeconds = 9; // 服务提供方在注册中心的租约时长（秒），心跳间隔为其 1/3
+    private long connectTimeout = 3000; // 启动时等待消费者连接建立的最长时间（毫秒）
+    private String concurrencyLimit = "none"; // 服务方法的并发限制：none 不限制，vegas 按响应时间自适应调整每个方法的在途请求数，超过时直接返回服务端过载
+    private int concurrencyLimitInitial = 20; // vegas 模式下每个方法的初始并发限制
+    private int concurrencyLimitMax = 1000; // vegas 模式下每个方法的并发限制上限
+    private String domainSocket; // 同时监听的 Unix domain socket 路径（需要 Linux epoll），同一台机器上的消费者优先使用，为空时不开启
+    private String transport = "nio"; // 网络传输的实现：nio，epoll（仅 Linux，不可用时自动退回 nio），服务端和客户端共用
+    private int bossThreads = 1; // 服务端接受连接的线程数，epoll 开启 reusePort 时每个线程各绑定一次端口
+    private int ioThreads = 0; // 服务端读写连接的线程数，0 表示使用 Netty 默认值
+    private int soBacklog = 128; // 服务端等待接受的连接队列长度
+    private boolean reusePort = false; // epoll 模式下以 SO_REUSEPORT 绑定多个接受连接的 socket，由内核分配新连接
+    private boolean tcpNoDelay = true; // 关闭 Nagle 算法，小包立即发送
+    private int writeBufferLowWaterMark = 32 * 1024; // 连接写缓冲的低水位（字节），回落到低水位以下时恢复可写
+    private int writeBufferHighWaterMark = 64 * 1024; // 连接写缓冲的高水位（字节），超过时连接变为不可写
+    private boolean allocatorPreferDirect = true; // ByteBuf 优先使用堆外内存
+    private int allocatorArenas = 0; // 内存池的 arena 数，0 表示使用 Netty 默认值（2 * CPU 核数）
+    private int allocatorMaxOrder = 0; // 内存池 chunk 大小为 pageSize << maxOrder，0 表示使用 Netty 默认值
+    private String writeCoalescing = "none"; // 写出合并：none 每条消息立即 flush，consolidate 合并同一轮事件循环内的 flush，batch 攒到一定字节数或者等待一段时间再 flush
+    private int writeCoalescingBytes = 16 * 1024; // batch 模式下缓冲达到该字节数时立即 flush
+    private long writeCoalescingDelayMicros = 50; // batch 模式下 flush 最多推迟的时间（微秒）
+    private int heartbeatInterval = 10000; // 客户端连接超过该时间（毫秒）没有读到数据时发送心跳，0 表示关闭心跳和空闲检测
+    private int heartbeatTimeout = 30000; // 连接超过该时间（毫秒）没有读到任何数据时认为已经失效并关闭，客户端和服务端都会检测
+    private int reconnectBackoff = 100; // 客户端连接断开后第一次重连前的等待时间（毫秒），之后每次失败翻倍并加入随机抖动
+    private int reconnectMaxBackoff = 10000; // 客户端重连等待时间的上限（毫秒）
+    private int reconnectMaxAttempts = 10; // 连接断开后一直没有调用使用时最多重连的次数，之后放弃并移除连接池（服务提供方已经下线）
+    private int maxFrameLength = 16 * 1024 * 1024; // 单个帧的最大长度（字节），超过时断开连接，服务端和客户端共用
+    private String serializers = "protostuff"; // 服务端接受的序列化方式，逗号分隔，如 protostuff,kryo,json；客户端配置了未开启的方式时退回 protostuff
+    private String serializerAllowList; // kryo、json 允许反序列化的类型前缀，逗号分隔，如 com.example.dto.；rpc 自身和服务接口所在的包总是允许
+    private String registrySnapshot = System.getProperty("user.home") + "/.rpc/registry-snapshot.json"; // 注册信息的本地快照文件，为空时不做持久化
 
     public String getHost() {
         return host;
@@ -24,4 +63,316 @@ public class ServerProperties {
         this.port = port;
     }
 
+    public int getClientPoolSize() {
+        return clientPoolSize;
+    }
+
+    public void setClientPoolSize(int clientPoolSize) {
+        this.clientPoolSize = clientPoolSize;
+    }
+
+    public int getClientIoThreads() {
+        return clientIoThreads;
+    }
+
+    public void setClientIoThreads(int clientIoThreads) {
+        this.clientIoThreads = clientIoThreads;
+    }
+
+    public int getClientAsyncThreads() {
+        return clientAsyncThreads;
+    }
+
+    public void setClientAsyncThreads(int clientAsyncThreads) {
+        this.clientAsyncThreads = clientAsyncThreads;
+    }
+
+    public int getClientAsyncQueueSize() {
+        return clientAsyncQueueSize;
+    }
+
+    public void setClientAsyncQueueSize(int clientAsyncQueueSize) {
+        this.clientAsyncQueueSize = clientAsyncQueueSize;
+    }
+
+    public String getDispatchMode() {
+        return dispatchMode;
+    }
+
+    public void setDispatchMode(String dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = dispatchThreads;
+    }
+
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    public void setDispatchQueueSize(int dispatchQueueSize) {
+        this.dispatchQueueSize = dispatchQueueSize;
+    }
+
+    public String getRejectPolicy() {
+        return rejectPolicy;
+    }
+
+    public void setRejectPolicy(String rejectPolicy) {
+        this.rejectPolicy = rejectPolicy;
+    }
+
+    public String getRegistrySnapshot() {
+        return registrySnapshot;
+    }
+
+    public void setRegistrySnapshot(String registrySnapshot) {
+        this.registrySnapshot = registrySnapshot;
+    }
+
+    public int getRegistryLeaseSeconds() {
+        return registryLeaseSeconds;
+    }
+
+    public void setRegistryLeaseSeconds(int registryLeaseSeconds) {
+        this.registryLeaseSeconds = registryLeaseSeconds;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public String getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(String concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public int getConcurrencyLimitInitial() {
+        return concurrencyLimitInitial;
+    }
+
+    public void setConcurrencyLimitInitial(int concurrencyLimitInitial) {
+        this.concurrencyLimitInitial = concurrencyLimitInitial;
+    }
+
+    public int getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    public void setConcurrencyLimitMax(int concurrencyLimitMax) {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+    }
+
+    public String getDomainSocket() {
+        return domainSocket;
+    }
+
+    public void setDomainSocket(String domainSocket) {
+        this.domainSocket = domainSocket;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public void setBossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getSoBacklog() {
+        return soBacklog;
+    }
+
+    public void setSoBacklog(int soBacklog) {
+        this.soBacklog = soBacklog;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public boolean isAllocatorPreferDirect() {
+        return allocatorPreferDirect;
+    }
+
+    public void setAllocatorPreferDirect(boolean allocatorPreferDirect) {
+        this.allocatorPreferDirect = allocatorPreferDirect;
+    }
+
+    public int getAllocatorArenas() {
+        return allocatorArenas;
+    }
+
+    public void setAllocatorArenas(int allocatorArenas) {
+        this.allocatorArenas = allocatorArenas;
+    }
+
+    public int getAllocatorMaxOrder() {
+        return allocatorMaxOrder;
+    }
+
+    public void setAllocatorMaxOrder(int allocatorMaxOrder) {
+        this.allocatorMaxOrder = allocatorMaxOrder;
+    }
+
+    public String getWriteCoalescing() {
+        return writeCoalescing;
+    }
+
+    public void setWriteCoalescing(String writeCoalescing) {
+        this.writeCoalescing = writeCoalescing;
+    }
+
+    public int getWriteCoalescingBytes() {
+        return writeCoalescingBytes;
+    }
+
+    public void setWriteCoalescingBytes(int writeCoalescingBytes) {
+        this.writeCoalescingBytes = writeCoalescingBytes;
+    }
+
+    public long getWriteCoalescingDelayMicros() {
+        return writeCoalescingDelayMicros;
+    }
+
+    public void setWriteCoalescingDelayMicros(long writeCoalescingDelayMicros) {
+        this.writeCoalescingDelayMicros = writeCoalescingDelayMicros;
+    }
+
+    public int getClientMaxPending() {
+        return clientMaxPending;
+    }
+
+    public void setClientMaxPending(int clientMaxPending) {
+        this.clientMaxPending = clientMaxPending;
+    }
+
+    public String getClientBackpressure() {
+        return clientBackpressure;
+    }
+
+    public void setClientBackpressure(String clientBackpressure) {
+        this.clientBackpressure = clientBackpressure;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public int getHeartbeatTimeout() {
+        return heartbeatTimeout;
+    }
+
+    public void setHeartbeatTimeout(int heartbeatTimeout) {
+        this.heartbeatTimeout = heartbeatTimeout;
+    }
+
+    public int getReconnectBackoff() {
+        return reconnectBackoff;
+    }
+
+    public void setReconnectBackoff(int reconnectBackoff) {
+        this.reconnectBackoff = reconnectBackoff;
+    }
+
+    public int getReconnectMaxBackoff() {
+        return reconnectMaxBackoff;
+    }
+
+    public void setReconnectMaxBackoff(int reconnectMaxBackoff) {
+        this.reconnectMaxBackoff = reconnectMaxBackoff;
+    }
+
+    public int getReconnectMaxAttempts() {
+        return reconnectMaxAttempts;
+    }
+
+    public void setReconnectMaxAttempts(int reconnectMaxAttempts) {
+        this.reconnectMaxAttempts = reconnectMaxAttempts;
+    }
+
+    public String getSerializers() {
+        return serializers;
+    }
+
+    public void setSerializers(String serializers) {
+        this.serializers = serializers;
+    }
+
+    public String getSerializerAllowList() {
+        return serializerAllowList;
+    }
+
+    public void setSerializerAllowList(String serializerAllowList) {
+        this.serializerAllowList = serializerAllowList;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
 }
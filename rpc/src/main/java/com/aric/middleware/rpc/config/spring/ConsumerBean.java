@@ -2,25 +2,29 @@ package com.aric.middleware.rpc.config.spring;
 
 import com.alibaba.fastjson.JSON;
 import com.aric.middleware.rpc.config.ProviderConfig;
-import com.aric.middleware.rpc.network.Request;
+import com.aric.middleware.rpc.loadbalance.LoadBalanceFactory;
+import com.aric.middleware.rpc.network.ClientTransport;
 import com.aric.middleware.rpc.proxy.ConsumerBeanProxy;
 import com.aric.middleware.rpc.register.RedisRegistryCenter;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.FactoryBean;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.List;
 
 /**
- * <rpc:consumer id="helloService" nozzle="com.aric.middleware.rpcprovider.export.HelloService" />
+ * <rpc:consumer id="helloService" nozzle="com.aric.middleware.rpcprovider.export.HelloService" serializer="kryo" loadbalance="p2c" timeout="1000" local="copy" />
  */
 public class ConsumerBean implements FactoryBean {
     private final Logger logger = LoggerFactory.getLogger(ConsumerBean.class);
 
     private String nozzle;
+    private String serializer; // 序列化方式：protostuff（默认）、kryo、json
+    private String loadbalance; // 负载均衡策略：random（默认）、roundrobin、leastactive、p2c
+    private int timeout; // 调用超时时间（毫秒），0 表示默认的 3000ms，单个方法可以用 @RpcMethod 配置
+    private String local; // 服务提供方在同一个 JVM 中时的调用方式：direct（默认，直接调用）、copy（直接调用，参数和结果复制一份）、none（走网络）
 
     public String getNozzle() {
         return nozzle;
@@ -30,22 +34,56 @@ public class ConsumerBean implements FactoryBean {
         this.nozzle = nozzle;
     }
 
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
+    public String getLoadbalance() {
+        return loadbalance;
+    }
+
+    public void setLoadbalance(String loadbalance) {
+        this.loadbalance = loadbalance;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public String getLocal() {
+        return local;
+    }
+
+    public void setLocal(String local) {
+        this.local = local;
+    }
+
     @Override
     public Object getObject() throws Exception {
-        ProviderConfig provider = RedisRegistryCenter.getProvider(this.nozzle);
-        if (null == provider) {
+        // 读取本地缓存，之后的变更由注册中心推送，代理类每次调用时重新获取
+        List<ProviderConfig> providers = RedisRegistryCenter.getProviders(this.nozzle);
+        if (providers.isEmpty()) {
             throw new RuntimeException("未找到注册的接口: " + this.nozzle);
         }
-        logger.info("找到注册的接口: {}", JSON.toJSONString(provider));
+        logger.info("找到注册的接口: {}", JSON.toJSONString(providers));
 
-        Request request = new Request();
-        request.setUuid(String.valueOf(UUID.randomUUID()));
-        request.setProviderConfig(provider);
+        // 提前建立连接，所有消费者的连接并行建立，容器刷新完成前统一等待
+        for (ProviderConfig provider : providers) {
+            ClientTransport.connectAsync(provider);
+        }
 
         return Proxy.newProxyInstance(
                 Thread.currentThread().getContextClassLoader(),
                 new Class[]{Class.forName(nozzle)},
-                new ConsumerBeanProxy(request)
+                new ConsumerBeanProxy(nozzle, () -> RedisRegistryCenter.getProviders(nozzle), SerializerFactory.get(serializer), LoadBalanceFactory.create(loadbalance), timeout, local)
         );
     }
 
@@ -31,6 +31,8 @@ public class MyBeanDefinitionParser implements BeanDefinitionParser {
             String name = method.getName();
             String methodName = name.substring(3, 4).toLowerCase() + name.substring(4);
             String value = element.getAttribute(methodName);
+            // 没有配置的属性使用类中的默认值
+            if (value.isEmpty()) continue;
             beanDefinition.getPropertyValues().addPropertyValue(methodName, value);
         }
 
@@ -3,6 +3,7 @@ package com.aric.middleware.rpc.config.spring;
 import com.alibaba.fastjson.JSON;
 import com.aric.middleware.rpc.config.LocalServer;
 import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.network.MethodDictionary;
 import com.aric.middleware.rpc.register.RedisRegistryCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +14,7 @@ import org.springframework.context.ApplicationContextAware;
 /**
  * 将接口信息注册到注册中心
  * <rpc:provider id="helloServiceRpc" nozzle="com.aric.middleware.rpc.provider.export.HelloService"
- *                   ref="helloService"/>
+ *                   ref="helloService" weight="100"/>
  */
 public class ProviderBean implements ApplicationContextAware {
 
@@ -21,6 +22,7 @@ public class ProviderBean implements ApplicationContextAware {
 
     private String nozzle;
     private String ref;
+    private int weight = 100; // 权重，消费者按权重随机选择时使用
 
     public String getNozzle() {
         return nozzle;
@@ -38,6 +40,14 @@ public class ProviderBean implements ApplicationContextAware {
         this.ref = ref;
     }
 
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
         ProviderConfig providerConfig = new ProviderConfig();
@@ -45,6 +55,15 @@ public class ProviderBean implements ApplicationContextAware {
         providerConfig.setRef(ref);
         providerConfig.setHost(LocalServer.getHost());
         providerConfig.setPort(LocalServer.getPort());
+        providerConfig.setDomainSocket(LocalServer.getDomainSocket());
+        providerConfig.setWeight(weight);
+
+        // 为接口的方法分配 id 并创建调用器，客户端握手时获取方法 id
+        try {
+            MethodDictionary.export(nozzle, applicationContext.getBean(ref));
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new RuntimeException("暴露接口失败: " + nozzle, e);
+        }
 
         RedisRegistryCenter.addProvider(providerConfig);
 
@@ -0,0 +1,39 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 最少活跃请求：选择在途请求数最少的服务提供方，数量相同时按权重随机
+ * 处理得慢的服务端在途请求会堆积，自然就分到更少的流量
+ */
+public class LeastActiveLoadBalance implements LoadBalance {
+    public static final String NAME = "leastactive";
+
+    @Override
+    public ProviderConfig select(List<ProviderConfig> providers) {
+        if (providers.size() == 1) {
+            return providers.get(0);
+        }
+
+        int leastActive = Integer.MAX_VALUE;
+        List<ProviderConfig> candidates = new ArrayList<>(providers.size());
+        for (ProviderConfig provider : providers) {
+            int active = ProviderStats.get(provider).getActive();
+            if (active < leastActive) {
+                leastActive = active;
+                candidates.clear();
+                candidates.add(provider);
+            } else if (active == leastActive) {
+                candidates.add(provider);
+            }
+        }
+
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        return WeightedRandomLoadBalance.select(candidates, candidates.size());
+    }
+}
@@ -0,0 +1,17 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.List;
+
+/**
+ * 负载均衡策略，每次调用时从服务提供方列表中选择一个
+ * 同一个消费者代理共用一个策略实例，实现需要保证线程安全
+ */
+public interface LoadBalance {
+
+    /**
+     * @param providers 当前可用的服务提供方，不为空
+     */
+    ProviderConfig select(List<ProviderConfig> providers);
+}
@@ -0,0 +1,30 @@
+package com.aric.middleware.rpc.loadbalance;
+
+/**
+ * 根据配置中的名称创建负载均衡策略，每个消费者一个实例
+ */
+public class LoadBalanceFactory {
+
+    public static final String DEFAULT = WeightedRandomLoadBalance.NAME;
+
+    /**
+     * 名称为空时使用默认的按权重随机
+     */
+    public static LoadBalance create(String name) {
+        if (null == name || name.isEmpty()) {
+            name = DEFAULT;
+        }
+        switch (name) {
+            case RoundRobinLoadBalance.NAME:
+                return new RoundRobinLoadBalance();
+            case WeightedRandomLoadBalance.NAME:
+                return new WeightedRandomLoadBalance();
+            case LeastActiveLoadBalance.NAME:
+                return new LeastActiveLoadBalance();
+            case P2CLoadBalance.NAME:
+                return new P2CLoadBalance();
+            default:
+                throw new IllegalArgumentException("不支持的负载均衡策略: " + name);
+        }
+    }
+}
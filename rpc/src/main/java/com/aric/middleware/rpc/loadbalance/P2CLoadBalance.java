@@ -0,0 +1,50 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices：随机选两个服务提供方，取负载更低的一个
+ * 负载 = 响应耗时的 EWMA * (在途请求数 + 1)，变慢的服务端会很快让出流量
+ * 只比较两个而不是全部，避免所有客户端同时涌向同一个"最好"的节点
+ * 还没有耗时样本的节点（刚上线、重启）借用另一个节点的耗时，只按在途请求数比较，
+ * 否则它的负载恒为 0，在第一个响应返回之前会接走所有的请求
+ */
+public class P2CLoadBalance implements LoadBalance {
+    public static final String NAME = "p2c";
+
+    @Override
+    public ProviderConfig select(List<ProviderConfig> providers) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(size);
+        int b = random.nextInt(size - 1);
+        if (b >= a) {
+            b++;
+        }
+
+        ProviderConfig first = providers.get(a);
+        ProviderConfig second = providers.get(b);
+        ProviderStats firstStats = ProviderStats.get(first);
+        ProviderStats secondStats = ProviderStats.get(second);
+        double firstRtt = firstStats.getEwmaNanos();
+        double secondRtt = secondStats.getEwmaNanos();
+        if (!firstStats.hasSample()) {
+            firstRtt = secondStats.hasSample() ? secondRtt : 1;
+        }
+        if (!secondStats.hasSample()) {
+            secondRtt = firstStats.hasSample() ? firstRtt : 1;
+        }
+        return cost(firstRtt, firstStats) <= cost(secondRtt, secondStats) ? first : second;
+    }
+
+    private double cost(double rtt, ProviderStats stats) {
+        return rtt * (stats.getActive() + 1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端视角的服务提供方（host:port）统计：在途请求数和响应耗时的 EWMA
+ * 同一个地址上的所有接口共用一份统计
+ */
+public class ProviderStats {
+    private static final ConcurrentMap<String, ProviderStats> stats = new ConcurrentHashMap<>();
+
+    // EWMA 的时间常数，一个样本的影响大约在这个时间后衰减到 1/e
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 失败的请求至少按这个耗时计入，和默认的超时时间一致
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private double ewmaNanos;
+    private long lastUpdate = System.nanoTime();
+    private boolean sampled; // 是否已经有过响应耗时的样本
+
+    public static ProviderStats get(ProviderConfig provider) {
+        return get(provider.getHost(), provider.getPort());
+    }
+
+    public static ProviderStats get(String host, int port) {
+        return stats.computeIfAbsent(host + ":" + port, key -> new ProviderStats());
+    }
+
+    /**
+     * 请求发出时调用，返回开始时间，请求结束时传给 end
+     */
+    public long begin() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param success 请求是否得到了服务提供方的正常处理；连接失败、超时、繁忙、过载等失败往往返回得很快，
+     *                按实际耗时计入会让出问题的服务提供方看起来最快，所以至少按 FAILURE_PENALTY_NANOS 计入
+     */
+    public void end(long startNanos, boolean success) {
+        active.decrementAndGet();
+        long now = System.nanoTime();
+        long rtt = now - startNanos;
+        update(success ? rtt : Math.max(rtt, FAILURE_PENALTY_NANOS), now);
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * 刚上线或者重启的服务提供方在第一个响应返回之前没有耗时样本，EWMA 为 0
+     */
+    public synchronized boolean hasSample() {
+        return sampled;
+    }
+
+    /**
+     * 按时间衰减的 EWMA：样本越密集，旧值被替换得越快
+     * 长时间没有样本时旧值也会衰减，被判定为慢的节点之后还有机会重新获得流量
+     */
+    public synchronized double getEwmaNanos() {
+        return ewmaNanos * Math.exp(-(System.nanoTime() - lastUpdate) / DECAY_NANOS);
+    }
+
+    private synchronized void update(long rtt, long now) {
+        double weight = Math.exp(-Math.max(0, now - lastUpdate) / DECAY_NANOS);
+        // 比当前值更慢的样本直接生效，慢节点能被立刻识别出来
+        ewmaNanos = rtt > ewmaNanos ? rtt : ewmaNanos * weight + rtt * (1 - weight);
+        lastUpdate = now;
+        sampled = true;
+    }
+}
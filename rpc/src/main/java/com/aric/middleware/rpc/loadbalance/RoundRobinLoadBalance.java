@@ -0,0 +1,21 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询，不考虑权重
+ */
+public class RoundRobinLoadBalance implements LoadBalance {
+    public static final String NAME = "roundrobin";
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public ProviderConfig select(List<ProviderConfig> providers) {
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % providers.size();
+        return providers.get(index);
+    }
+}
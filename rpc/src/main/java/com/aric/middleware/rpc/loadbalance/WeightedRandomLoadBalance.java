@@ -0,0 +1,49 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按权重随机，权重都相同时退化为均匀随机
+ */
+public class WeightedRandomLoadBalance implements LoadBalance {
+    public static final String NAME = "random";
+
+    @Override
+    public ProviderConfig select(List<ProviderConfig> providers) {
+        return select(providers, providers.size());
+    }
+
+    /**
+     * 在前 count 个服务提供方中按权重随机，供其他策略在候选集合中使用
+     */
+    static ProviderConfig select(List<ProviderConfig> providers, int count) {
+        int total = 0;
+        boolean sameWeight = true;
+        for (int i = 0; i < count; i++) {
+            int weight = weight(providers.get(i));
+            total += weight;
+            if (sameWeight && i > 0 && weight != weight(providers.get(i - 1))) {
+                sameWeight = false;
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (total > 0 && !sameWeight) {
+            int offset = random.nextInt(total);
+            for (int i = 0; i < count; i++) {
+                offset -= weight(providers.get(i));
+                if (offset < 0) {
+                    return providers.get(i);
+                }
+            }
+        }
+        return providers.get(random.nextInt(count));
+    }
+
+    static int weight(ProviderConfig provider) {
+        return Math.max(0, provider.getWeight());
+    }
+}
@@ -0,0 +1,96 @@
+package com.aric.middleware.rpc.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量请求，一个帧中携带多次调用，服务端按顺序返回同样数量的结果（BatchResponse）
+ * 请求 id 和序列化编号放在帧头中，不参与序列化
+ */
+public class BatchRequest {
+    private transient int requestId;
+    private transient byte serializer;
+    private transient int timeout; // 超时时间（毫秒），对应帧头中的 FLAG_DEADLINE
+    private transient long deadline; // 服务端收到请求时换算出的截止时间，0 表示没有限制
+    private List<Call> calls = new ArrayList<>();
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * 写出时使用的副本，带上连接分配的请求 id 和剩余的超时时间，调用方的对象不会被修改
+     */
+    BatchRequest withHeader(int requestId, int timeout) {
+        BatchRequest copy = new BatchRequest();
+        copy.requestId = requestId;
+        copy.serializer = serializer;
+        copy.timeout = timeout;
+        copy.calls = calls;
+        return copy;
+    }
+
+    public List<Call> getCalls() {
+        return calls;
+    }
+
+    public void setCalls(List<Call> calls) {
+        this.calls = calls;
+    }
+
+    public void add(int methodId, Object[] args) {
+        Call call = new Call();
+        call.setMethodId(methodId);
+        call.setArgs(args);
+        calls.add(call);
+    }
+
+    public static class Call {
+        private int methodId;
+        private Object[] args;
+
+        public int getMethodId() {
+            return methodId;
+        }
+
+        public void setMethodId(int methodId) {
+            this.methodId = methodId;
+        }
+
+        public Object[] getArgs() {
+            return args;
+        }
+
+        public void setArgs(Object[] args) {
+            this.args = args;
+        }
+    }
+}
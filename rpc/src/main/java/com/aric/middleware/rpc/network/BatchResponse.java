@@ -0,0 +1,27 @@
+package com.aric.middleware.rpc.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量请求的结果，作为普通响应的 result 返回，和 BatchRequest 中的调用一一对应
+ * 每个 Response 单独携带结果或错误信息，一次调用失败不影响其他调用
+ */
+public class BatchResponse {
+    private List<Response> responses = new ArrayList<>();
+
+    public BatchResponse() {
+    }
+
+    public BatchResponse(List<Response> responses) {
+        this.responses = responses;
+    }
+
+    public List<Response> getResponses() {
+        return responses;
+    }
+
+    public void setResponses(List<Response> responses) {
+        this.responses = responses;
+    }
+}
@@ -1,19 +1,175 @@
 package com.aric.middleware.rpc.network;
 
-import com.alibaba.fastjson.JSON;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每条连接一个实例，保存这条连接的在途请求表和握手得到的方法字典
+ */
 public class ClientHandler extends ChannelInboundHandlerAdapter {
     private final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
 
+    private final WriteFutureMap writeFutureMap = new WriteFutureMap();
+    // 在途请求数和可写状态的背压
+    private final PendingLimiter pendingLimiter;
+    // 这条连接上进行中的流式调用
+    private final Map<Integer, ClientStream> streams = new ConcurrentHashMap<>();
+
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
+    private volatile Set<Integer> serializers = Collections.emptySet();
+    private volatile CompletableFuture<Void> handshakeFuture;
+
+    public ClientHandler() {
+        this(new PendingLimiter(0, PendingLimiter.POLICY_WAIT));
+    }
+
+    public ClientHandler(PendingLimiter pendingLimiter) {
+        this.pendingLimiter = pendingLimiter;
+    }
+
+    /**
+     * 发送握手请求，返回的 future 在收到服务端的方法字典后完成
+     */
+    public synchronized CompletableFuture<Void> handshake(Channel channel) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        this.handshakeFuture = future;
+        channel.writeAndFlush(new Handshake()).addListener(f -> {
+            if (!f.isSuccess()) {
+                future.completeExceptionally(f.cause());
+            }
+        });
+        return future;
+    }
+
+    public Integer getMethodId(String signature) {
+        return methodIds.get(signature);
+    }
+
+    public boolean supportsSerializer(byte serializer) {
+        return serializers.contains((int) serializer);
+    }
+
+    public WriteFutureMap getWriteFutureMap() {
+        return writeFutureMap;
+    }
+
+    public PendingLimiter getPendingLimiter() {
+        return pendingLimiter;
+    }
+
+    void addStream(int requestId, ClientStream stream) {
+        streams.put(requestId, stream);
+    }
+
+    void removeStream(int requestId) {
+        streams.remove(requestId);
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof Handshake) {
+            Handshake handshake = (Handshake) msg;
+            Map<String, Integer> methods = handshake.getMethods();
+            this.methodIds = null == methods ? Collections.emptyMap() : methods;
+            this.serializers = null == handshake.getSerializers() ? Collections.emptySet() : new HashSet<>(handshake.getSerializers());
+            logger.info("client 握手完成, 方法数: {}", this.methodIds.size());
+            CompletableFuture<Void> future = this.handshakeFuture;
+            if (null != future) {
+                future.complete(null);
+            }
+            return;
+        }
+
+        if (msg instanceof StreamFrame) {
+            onStreamFrame((StreamFrame) msg);
+            return;
+        }
+
+        // 响应无法反序列化（例如结果类型不在序列化白名单中），只让对应的请求失败，不用等到超时
+        if (msg instanceof DecodeFailure) {
+            onDecodeFailure((DecodeFailure) msg);
+            return;
+        }
+
         Response response = (Response) msg;
-        logger.info("client 获取到数据: {}", JSON.toJSONString(response));
-        WriteFuture writeFuture = WriteFutureMap.getWriteFuture(response.getRequestId());
-        writeFuture.setResponse(response);
+        if (logger.isDebugEnabled()) {
+            logger.debug("client 获取到响应: {}", response.getRequestId());
+        }
+        if (!writeFutureMap.complete(response)) {
+            logger.warn("请求已超时, 丢弃响应: {}", response.getRequestId());
+        }
+    }
+
+    private void onStreamFrame(StreamFrame frame) {
+        if (frame.getType() == Protocol.TYPE_STREAM_CHUNK) {
+            ClientStream stream = streams.get(frame.getRequestId());
+            if (null != stream && null != frame.getItems()) {
+                stream.onChunk(frame.getItems());
+            }
+        } else if (frame.getType() == Protocol.TYPE_STREAM_END) {
+            ClientStream stream = streams.remove(frame.getRequestId());
+            if (null != stream) {
+                stream.onEnd(frame.getError());
+            }
+        }
+    }
+
+    private void onDecodeFailure(DecodeFailure failure) {
+        logger.warn("client 无法解析响应: {}, {}", failure.getRequestId(), failure.getError());
+        RpcException cause = new RpcException(RpcErrorCode.SERIALIZE_ERROR, failure.getError());
+        if (failure.getType() == Protocol.TYPE_RESPONSE) {
+            writeFutureMap.fail(failure.getRequestId(), cause);
+            return;
+        }
+        ClientStream stream = streams.get(failure.getRequestId());
+        if (null != stream) {
+            // 通知服务端停止发送剩余的结果
+            stream.sendCancel();
+            stream.onFail(cause);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            pendingLimiter.drain(ctx.channel());
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        RpcException cause = new RpcException(RpcErrorCode.SYSTEM_ERROR, "连接断开");
+        // 先清空等待队列，在途请求失败时归还的名额不会再把等待的请求写到已经断开的连接上
+        pendingLimiter.failAll(cause);
+        writeFutureMap.failAll(cause);
+        for (Integer requestId : streams.keySet()) {
+            ClientStream stream = streams.remove(requestId);
+            if (null != stream) {
+                stream.onFail(cause);
+            }
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 帧格式错误、握手无法解析等连接级别的异常，关闭连接，在途请求随 channelInactive 立即失败
+     */
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        logger.warn("client 连接异常, 关闭连接: {}, {}", ctx.channel().remoteAddress(), cause.toString());
+        ctx.close();
     }
 }
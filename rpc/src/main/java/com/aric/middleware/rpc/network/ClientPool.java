@@ -0,0 +1,155 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.config.ServerProperties;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个服务提供方（host:port）的连接池，连接数固定，按轮询的方式分配连接
+ * 连接可以在启动时通过 connectAll 提前建立，否则在第一次被使用时建立
+ * 建立好的连接断开后在后台重新连接，等待时间按 reconnectBackoff 指数增长并加入随机抖动，避免所有消费者同时重连；
+ * 重连期间的调用优先分配给其他可用的连接，没有可用的连接时在调用线程上同步建立
+ * 连接断开后一直没有调用、并且重连失败了 reconnectMaxAttempts 次时，认为服务提供方已经下线，关闭并移除整个连接池；
+ * 之后再有调用时会重新创建连接池
+ */
+public class ClientPool {
+    private static final Logger logger = LoggerFactory.getLogger(ClientPool.class);
+
+    private final String host;
+    private final int port;
+    private final String domainSocket;
+    private final ClientSocket[] sockets;
+    private final AtomicInteger counter = new AtomicInteger();
+    private volatile boolean closed;
+    // 最近一次分配连接的时间，用于判断断开之后是否还有调用
+    private volatile long lastUsed = System.nanoTime();
+
+    public ClientPool(String host, int port, int size) {
+        this(host, port, null, size);
+    }
+
+    /**
+     * @param domainSocket 不为 null 时通过该路径的 Unix domain socket 连接，而不是 TCP
+     */
+    public ClientPool(String host, int port, String domainSocket, int size) {
+        this.host = host;
+        this.port = port;
+        this.domainSocket = domainSocket;
+        this.sockets = new ClientSocket[Math.max(1, size)];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i] = null == domainSocket
+                    ? new ClientSocket(host, port)
+                    : new ClientSocket(host, port, new DomainSocketAddress(domainSocket));
+            sockets[i].setOnClose(socket -> reconnect(socket, 1, System.nanoTime()));
+        }
+    }
+
+    public ClientSocket next() throws InterruptedException {
+        lastUsed = System.nanoTime();
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % sockets.length;
+        // 跳过正在重连的连接
+        for (int i = 0; i < sockets.length; i++) {
+            ClientSocket socket = sockets[(index + i) % sockets.length];
+            if (socket.isReady()) {
+                return socket;
+            }
+        }
+
+        ClientSocket socket = sockets[index];
+        socket.connect(ClientTransport.getBootstrap(null != domainSocket));
+        return socket;
+    }
+
+    /**
+     * 等待一段时间后重新连接，失败时继续等待更长的时间，直到连接成功、连接池关闭，或者长时间没有调用时放弃
+     * 等待在共享的时间轮上进行，连接和握手都是异步的，不会阻塞时间轮的线程
+     *
+     * @param disconnected 连接断开的时间
+     */
+    private void reconnect(ClientSocket socket, int attempt, long disconnected) {
+        if (closed) {
+            return;
+        }
+        if (attempt > ClientTransport.getProperties().getReconnectMaxAttempts() && lastUsed - disconnected < 0) {
+            logger.warn("重新连接服务端失败 {} 次, 并且没有调用使用, 移除连接池: {}:{}", attempt - 1, host, port);
+            ClientTransport.remove(this);
+            return;
+        }
+        long delay = backoff(attempt);
+        if (1 == attempt) {
+            logger.warn("与服务端的连接断开, {}ms 后重新连接: {}:{}", delay, host, port);
+        }
+        WriteFutureMap.schedule(() -> {
+            if (closed || socket.isReady()) {
+                return;
+            }
+            socket.connectAsync(ClientTransport.getBootstrap(null != domainSocket)).whenComplete((v, e) -> {
+                if (null == e) {
+                    logger.info("重新连接服务端成功: {}:{}, 尝试次数: {}", host, port, attempt);
+                } else if (!closed) {
+                    logger.debug("重新连接服务端失败: {}:{}, {}", host, port, e.getMessage());
+                    reconnect(socket, attempt + 1, disconnected);
+                }
+            });
+        }, delay);
+    }
+
+    /**
+     * 第 attempt 次重连前的等待时间，在 [max / 2, max] 之间随机，max 每次翻倍，不超过 reconnectMaxBackoff
+     */
+    private static long backoff(int attempt) {
+        ServerProperties properties = ClientTransport.getProperties();
+        long base = Math.max(1, properties.getReconnectBackoff());
+        long max = Math.min(Math.max(base, properties.getReconnectMaxBackoff()), base << Math.min(attempt - 1, 20));
+        return max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+    }
+
+    /**
+     * 并行建立所有连接，全部完成（或者有失败）时 future 完成
+     */
+    public CompletableFuture<Void> connectAll() {
+        CompletableFuture<?>[] futures = new CompletableFuture[sockets.length];
+        for (int i = 0; i < sockets.length; i++) {
+            futures[i] = sockets[i].connectAsync(ClientTransport.getBootstrap(null != domainSocket));
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    public void close() {
+        closed = true;
+        for (ClientSocket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getDomainSocket() {
+        return domainSocket;
+    }
+
+    /**
+     * 连接池中的所有连接，用于查看每条连接的在途请求数等指标
+     */
+    public List<ClientSocket> getSockets() {
+        return Collections.unmodifiableList(Arrays.asList(sockets));
+    }
+
+    public int size() {
+        return sockets.length;
+    }
+}
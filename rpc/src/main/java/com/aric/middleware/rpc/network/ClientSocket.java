@@ -1,116 +1,327 @@
 package com.aric.middleware.rpc.network;
 
 import com.alibaba.fastjson.JSON;
-import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.time.LocalTime;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-public class ClientSocket implements Runnable {
-    private ChannelFuture channelFuture;
+/**
+ * 客户端的一条连接，由 ClientPool 管理，同一条连接上可以同时有多个请求在途
+ */
+public class ClientSocket {
+    public static final int DEFAULT_TIMEOUT = 3000;
+
+    private volatile Channel channel;
+    private volatile ClientHandler handler;
+    private CompletableFuture<Void> connecting;
+    // 建立好的连接断开时的回调，由连接池设置，用于在后台重新连接
+    private volatile Consumer<ClientSocket> onClose;
+    private volatile boolean closed;
 
     private final String host;
     private final int port;
+    private final SocketAddress address;
 
     public ClientSocket(String host, int port) {
+        this(host, port, InetSocketAddress.createUnresolved(host, port));
+    }
+
+    /**
+     * @param address 实际连接的地址，通过 Unix domain socket 连接时为 DomainSocketAddress，host 和 port 用于标识服务提供方
+     */
+    public ClientSocket(String host, int port, SocketAddress address) {
         this.host = host;
         this.port = port;
+        this.address = address;
     }
 
-    @Override
-    public void run() {
-        NioEventLoopGroup eventExecutors = new NioEventLoopGroup();
+    /**
+     * 使用共享的 bootstrap（共享的线程组）建立连接，并完成方法字典的握手
+     */
+    public void connect(Bootstrap bootstrap) throws InterruptedException {
         try {
-            //创建bootstrap对象，配置参数
-            Bootstrap bootstrap = new Bootstrap();
-            //设置线程组
-            bootstrap.group(eventExecutors)
-                    //设置客户端的通道实现类型
-                    .channel(NioSocketChannel.class)
-                    //使用匿名内部类初始化通道
-                    .handler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel ch) throws Exception {
-                            //添加客户端通道的处理器
-                            ch.pipeline().addLast(
-                                    new Encoder(Request.class),
-                                    new Decoder(Response.class),
-                                    new ClientHandler()
-                            );
-                        }
-                    });
-
-            //连接服务端
-            this.channelFuture = bootstrap.connect(this.host, this.port).sync();
-            //对通道关闭进行监听
-            this.channelFuture.channel().closeFuture().sync();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            //关闭线程组
-            eventExecutors.shutdownGracefully();
+            connectAsync(bootstrap).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw new RpcException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步建立连接并握手，连接和握手都在 IO 线程上的回调中推进，调用线程不会被阻塞
+     * 正在建立中的连接直接返回同一个 future，不会重复建立
+     */
+    public synchronized CompletableFuture<Void> connectAsync(Bootstrap bootstrap) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new RpcException(RpcErrorCode.SYSTEM_ERROR, "连接已关闭 " + host + ":" + port));
+        }
+        if (isReady()) {
+            return CompletableFuture.completedFuture(null);
         }
+        if (null != connecting && !connecting.isDone()) {
+            return connecting;
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        this.connecting = future;
+        bootstrap.connect(this.address).addListener((ChannelFutureListener) connectFuture -> {
+            if (!connectFuture.isSuccess()) {
+                future.completeExceptionally(new RpcException(connectFuture.cause()));
+                return;
+            }
+            Channel channel = connectFuture.channel();
+            ClientHandler handler = channel.pipeline().get(ClientHandler.class);
+            handler.handshake(channel).orTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((v, e) -> {
+                if (null != e) {
+                    channel.close();
+                    future.completeExceptionally(e instanceof TimeoutException
+                            ? new RpcException(RpcErrorCode.TIMEOUT_ERROR, "握手超时 " + host + ":" + port)
+                            : new RpcException(e));
+                    return;
+                }
+                // 握手期间连接池已经关闭
+                if (closed) {
+                    channel.close();
+                    future.completeExceptionally(new RpcException(RpcErrorCode.SYSTEM_ERROR, "连接已关闭 " + host + ":" + port));
+                    return;
+                }
+                this.handler = handler;
+                this.channel = channel;
+                channel.closeFuture().addListener(f -> {
+                    Consumer<ClientSocket> onClose = this.onClose;
+                    if (!closed && null != onClose) {
+                        onClose.accept(this);
+                    }
+                });
+                future.complete(null);
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 关闭连接，之后不再重新连接
+     */
+    public void close() {
+        closed = true;
+        Channel channel = this.channel;
+        if (null != channel) {
+            channel.close();
+        }
+    }
+
+    void setOnClose(Consumer<ClientSocket> onClose) {
+        this.onClose = onClose;
     }
 
     public boolean isReady() {
-        if (null != this.channelFuture) {
-            return this.channelFuture.channel().isActive();
+        Channel channel = this.channel;
+        return null != channel && channel.isActive();
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * 根据方法签名查找握手得到的方法 id
+     * 服务端可能在握手之后才暴露新的接口，找不到时重新握手一次
+     */
+    public int getMethodId(String signature) throws InterruptedException {
+        Integer methodId = handler.getMethodId(signature);
+        if (null == methodId) {
+            awaitHandshake(handler.handshake(channel));
+            methodId = handler.getMethodId(signature);
+        }
+        if (null == methodId) {
+            throw new RpcException(RpcErrorCode.METHOD_NOT_FOUND, signature);
         }
+        return methodId;
+    }
 
-        return false;
+    /**
+     * 服务端是否支持该序列化方式，握手时服务端下发支持的列表
+     */
+    public boolean supportsSerializer(byte serializer) {
+        return handler.supportsSerializer(serializer);
     }
 
-    public ChannelFuture getChannelFuture() {
-        return channelFuture;
+    public Response writeMessage(Request request) throws InterruptedException {
+        return await(writeMessageAsync(request));
     }
 
-    public Response writeMessage(Request request) throws InterruptedException, ExecutionException, TimeoutException {
-        WriteFuture writeFuture = WriteFutureMap.getWriteFuture(request.getUuid());
+    /**
+     * 同步等待响应，超时等错误以 RpcException 抛出
+     */
+    public static Response await(CompletableFuture<Response> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw new RpcException(e.getCause());
+        }
+    }
+
+    /**
+     * 异步发送请求，返回的 future 在收到响应的 IO 线程上完成，调用线程不会被阻塞
+     */
+    public CompletableFuture<Response> writeMessageAsync(Request request) {
+        Channel channel = this.channel;
+        WriteFutureMap writeFutureMap = handler.getWriteFutureMap();
+
+        // 登记在途请求，超时由时间轮负责，超时时间同时放在帧头中告知服务端
+        // 调用方的请求对象不会被修改，写出的是分配了请求 id 的副本
+        WriteFuture writeFuture = writeFutureMap.newWriteFuture(timeoutOf(request.getTimeout()));
+        Request sent = request.withRequestId(writeFuture.getRequestId());
+
+        // 发送数据，连接上的在途请求已满时按背压策略等待或者失败
+        long start = System.nanoTime();
+        send(channel, writeFutureMap, writeFuture, () -> {
+            // 在等待队列中消耗的时间从告知服务端的超时时间中扣除
+            int timeout = remaining(sent.getTimeout(), start);
+            return timeout == sent.getTimeout() ? sent : sent.withTimeout(timeout);
+        });
+
+        return writeFuture;
+    }
+
+    /**
+     * 在一个帧中发送多次调用，返回的结果和请求中的调用按位置一一对应
+     * 整个批次共用一个请求 id 和超时时间
+     */
+    public CompletableFuture<List<Response>> writeBatchAsync(BatchRequest batch) {
+        Channel channel = this.channel;
+        WriteFutureMap writeFutureMap = handler.getWriteFutureMap();
 
-        // 发送数据
-        channelFuture.channel().writeAndFlush(request);
+        WriteFuture writeFuture = writeFutureMap.newWriteFuture(timeoutOf(batch.getTimeout()));
+        int requestId = writeFuture.getRequestId();
 
-        // 设置超时时间等待返回数据
-        Response response = writeFuture.get(3000, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        send(channel, writeFutureMap, writeFuture, () -> batch.withHeader(requestId, remaining(batch.getTimeout(), start)));
 
-        WriteFutureMap.removeWriteFuture(request.getUuid());
+        return writeFuture.thenApply(response -> ((BatchResponse) response.getResult()).getResponses());
+    }
+
+    /**
+     * 发起流式调用，返回阻塞迭代器，结果按迭代的进度分批拉取
+     */
+    public StreamIterator openStream(Request request) {
+        StreamIterator iterator = new StreamIterator(StreamIterator.DEFAULT_WINDOW, DEFAULT_TIMEOUT);
+        open(request, iterator);
+        return iterator;
+    }
 
-        return response;
+    /**
+     * 发起流式调用，返回 Flow.Publisher，订阅时才发出请求
+     */
+    public StreamPublisher openPublisher(Request request) {
+        return new StreamPublisher(stream -> open(request, stream));
     }
 
-    public static void main(String[] args) throws InterruptedException, ExecutionException, TimeoutException {
-        ClientSocket client = new ClientSocket("127.0.0.1", 6666);
-        Thread thread = new Thread(client);
-        thread.start();
-        while (!client.isReady()) {
-            Thread.sleep(500);
+    private void open(Request request, ClientStream stream) {
+        Channel channel = this.channel;
+        ClientHandler handler = this.handler;
+        int requestId = handler.getWriteFutureMap().nextRequestId();
+        // 流式调用的时长取决于结果的数量和消费的速度，不设截止时间
+        Request sent = request.withRequestId(requestId).withStream(true).withTimeout(0);
+        stream.bind(channel, handler, requestId, request.getSerializer());
+        handler.addStream(requestId, stream);
+
+        channel.writeAndFlush(sent).addListener(future -> {
+            if (!future.isSuccess()) {
+                handler.removeStream(requestId);
+                stream.onFail(future.cause());
+            }
+        });
+        // 请求和额度在同一条连接上按顺序发出
+        stream.onOpen();
+    }
+
+    /**
+     * 通过连接的背压发送，message 在真正写出时才生成
+     */
+    private void send(Channel channel, WriteFutureMap writeFutureMap, WriteFuture writeFuture, Supplier<Object> message) {
+        int requestId = writeFuture.getRequestId();
+        boolean accepted = handler.getPendingLimiter().submit(channel, writeFuture, () ->
+                channel.writeAndFlush(message.get()).addListener(future -> {
+                    if (!future.isSuccess()) {
+                        writeFutureMap.fail(requestId, future.cause());
+                    }
+                }));
+        if (!accepted) {
+            writeFutureMap.fail(requestId, new RpcException(RpcErrorCode.CLIENT_BUSY, host + ":" + port));
         }
+    }
 
-        System.out.println("client 启动完成: " + LocalTime.now());
+    public PendingLimiter getPendingLimiter() {
+        return handler.getPendingLimiter();
+    }
 
-        Thread.sleep(2000);
+    /**
+     * 扣除已经等待的时间后剩余的超时时间，至少保留 1ms，0 表示没有设置
+     */
+    private static int remaining(int timeout, long start) {
+        if (timeout <= 0) {
+            return timeout;
+        }
+        return (int) Math.max(1, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
 
-        System.out.println("client 开始发送数据: " + LocalTime.now());
+    private static long timeoutOf(int timeout) {
+        return timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+    }
 
-        Request request = new Request();
-        request.setUuid(String.valueOf(UUID.randomUUID()));
-        ProviderConfig providerConfig = new ProviderConfig();
-        providerConfig.setPort(33060);
-        providerConfig.setHost("127.0.0.1");
-        providerConfig.setNozzle("com.aric.middleware.rpcprovider.export.HelloService");
-        providerConfig.setRef("helloService");
-        request.setProviderConfig(providerConfig);
+    private void awaitHandshake(CompletableFuture<Void> handshake) throws InterruptedException {
+        try {
+            handshake.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new RpcException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RpcException(RpcErrorCode.TIMEOUT_ERROR, "握手超时 " + host + ":" + port);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ClientSocket client = ClientTransport.getClient("127.0.0.1", 6666);
+
+        System.out.println("client 启动完成: " + LocalTime.now());
+
+        Request request = new Request(client.getMethodId("com.aric.middleware.rpcprovider.export.HelloService#hi()"),
+                SerializerFactory.getDefault().getId(), 0, null);
 
         Response response = client.writeMessage(request);
         System.out.println("接收到服务端响应: " + LocalTime.now() + " -> " + JSON.toJSONString(response));
+
+        ClientTransport.shutdown();
     }
 }
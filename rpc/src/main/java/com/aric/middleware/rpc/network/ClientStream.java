@@ -0,0 +1,59 @@
+package com.aric.middleware.rpc.network;
+
+import io.netty.channel.Channel;
+
+/**
+ * 客户端的一个流式调用，由 ClientHandler 在 IO 线程上投递结果
+ * 子类决定结果怎样交给调用方，以及什么时候向服务端授予额度
+ */
+public abstract class ClientStream {
+    private volatile Channel channel;
+    private volatile ClientHandler handler;
+    private volatile int requestId;
+    private volatile byte serializer;
+
+    void bind(Channel channel, ClientHandler handler, int requestId, byte serializer) {
+        this.channel = channel;
+        this.handler = handler;
+        this.requestId = requestId;
+        this.serializer = serializer;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * 授予服务端继续发送 n 条结果的额度
+     */
+    protected void sendCredit(int n) {
+        StreamFrame frame = new StreamFrame(Protocol.TYPE_STREAM_CREDIT, requestId, serializer);
+        frame.setCredit(n);
+        channel.writeAndFlush(frame);
+    }
+
+    /**
+     * 提前结束，服务端停止读取剩余的结果
+     */
+    protected void sendCancel() {
+        handler.removeStream(requestId);
+        channel.writeAndFlush(new StreamFrame(Protocol.TYPE_STREAM_CANCEL, requestId, serializer));
+    }
+
+    /**
+     * 建立完成、请求发出后调用，子类在这里授予初始额度
+     */
+    protected abstract void onOpen();
+
+    protected abstract void onChunk(Object[] items);
+
+    /**
+     * @param error 服务端的错误信息，正常结束时为 null
+     */
+    protected abstract void onEnd(String error);
+
+    /**
+     * 连接断开等本地错误
+     */
+    protected abstract void onFail(Throwable cause);
+}
@@ -0,0 +1,299 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.config.ServerProperties;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 客户端共享的传输层：
+ * 1. 所有的消费者代理共用一个线程组
+ * 2. 每个服务提供方（host:port）维护一个连接池
+ * 3. 每条连接上的请求通过请求 id 多路复用
+ * 4. 服务提供方在同一台机器上并且发布了 Unix domain socket 时（仅 Linux epoll），优先通过 domain socket 连接，失败时退回 TCP
+ * 5. 重试、对冲等需要重新选择连接的后台任务在一个有界的线程池中执行
+ */
+public class ClientTransport {
+    private static final Logger logger = LoggerFactory.getLogger(ClientTransport.class);
+
+    private static final ConcurrentMap<String, ClientPool> pools = new ConcurrentHashMap<>();
+    // 启动阶段提前发起、还没有等待过的连接
+    private static final Map<String, CompletableFuture<Void>> pendingConnects = new ConcurrentHashMap<>();
+
+    private static volatile int poolSize = 2;
+    private static volatile int ioThreads = 0;
+    // 传输实现和 socket 参数，和服务端使用同一份配置
+    private static volatile ServerProperties properties = new ServerProperties();
+
+    // 服务提供方是否通过 domain socket 连接，key 为 host:port，连接失败后改为 false
+    private static final ConcurrentMap<String, Boolean> domainSockets = new ConcurrentHashMap<>();
+    // 本机地址的判断结果
+    private static final ConcurrentMap<String, Boolean> localHosts = new ConcurrentHashMap<>();
+
+    private static volatile EventLoopGroup eventLoopGroup;
+    private static volatile Bootstrap bootstrap;
+    private static volatile EventLoopGroup domainEventLoopGroup;
+    private static volatile Bootstrap domainBootstrap;
+    private static volatile ThreadPoolExecutor executor;
+
+    /**
+     * @param poolSize  每个服务提供方的连接数
+     * @param ioThreads 线程组的线程数，0 表示使用 Netty 的默认值
+     */
+    public static void init(int poolSize, int ioThreads) {
+        ClientTransport.poolSize = poolSize;
+        ClientTransport.ioThreads = ioThreads;
+    }
+
+    /**
+     * 连接数、线程数之外，同时使用其中的传输实现（nio、epoll）、TCP_NODELAY、写缓冲水位和内存池配置
+     */
+    public static void init(ServerProperties properties) {
+        init(properties.getClientPoolSize(), properties.getClientIoThreads());
+        ClientTransport.properties = properties;
+    }
+
+    public static ClientSocket getClient(String host, int port) throws InterruptedException {
+        return getPool(host, port).next();
+    }
+
+    /**
+     * 服务提供方可以通过 domain socket 连接时优先使用，连接失败时记录下来，之后都使用 TCP
+     */
+    public static ClientSocket getClient(ProviderConfig provider) throws InterruptedException {
+        if (useDomainSocket(provider)) {
+            try {
+                return getDomainPool(provider).next();
+            } catch (RpcException e) {
+                logger.warn("通过 domain socket 连接服务端失败, 改用 TCP: {}, {}", provider.getDomainSocket(), e.getMessage());
+                domainSockets.put(provider.getHost() + ":" + provider.getPort(), false);
+            }
+        }
+        return getClient(provider.getHost(), provider.getPort());
+    }
+
+    /**
+     * 提前建立到服务提供方的所有连接，不阻塞调用线程
+     * 多个消费者的连接并行建立，由 awaitConnects 统一等待
+     */
+    public static CompletableFuture<Void> connectAsync(String host, int port) {
+        CompletableFuture<Void> future = getPool(host, port).connectAll();
+        pendingConnects.put(host + ":" + port, future);
+        return future;
+    }
+
+    public static CompletableFuture<Void> connectAsync(ProviderConfig provider) {
+        if (!useDomainSocket(provider)) {
+            return connectAsync(provider.getHost(), provider.getPort());
+        }
+        CompletableFuture<Void> future = getDomainPool(provider).connectAll();
+        pendingConnects.put(provider.getDomainSocket(), future);
+        return future;
+    }
+
+    /**
+     * 等待提前发起的连接完成，连接失败只记录日志，第一次调用时会重新连接
+     */
+    public static void awaitConnects(long timeoutMillis) throws InterruptedException {
+        Map<String, CompletableFuture<Void>> pending = new HashMap<>(pendingConnects);
+        pendingConnects.keySet().removeAll(pending.keySet());
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompletableFuture.allOf(pending.values().toArray(new CompletableFuture[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException ignore) {
+            // 具体哪个失败在下面逐个记录
+        }
+        pending.forEach((address, future) -> {
+            if (!future.isDone()) {
+                logger.warn("连接服务端超时: {}", address);
+            } else if (future.isCompletedExceptionally()) {
+                logger.warn("连接服务端失败: {}, {}", address, future.handle((v, e) -> e.getMessage()).join());
+            }
+        });
+        logger.info("预先建立连接完成, 服务端数: {}, 耗时: {}ms", pending.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    static ServerProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * 当前所有的连接池，key 为 host:port，domain socket 连接池为 unix:路径
+     * 每条连接的 PendingLimiter 给出在途请求数、等待数和被拒绝的次数
+     */
+    public static Map<String, ClientPool> getPools() {
+        return Collections.unmodifiableMap(pools);
+    }
+
+    /**
+     * 移除并关闭连接池，只移除 map 中仍然是这个实例的条目，之后的调用会重新创建连接池
+     */
+    static void remove(ClientPool pool) {
+        String key = null == pool.getDomainSocket() ? pool.getHost() + ":" + pool.getPort() : "unix:" + pool.getDomainSocket();
+        pools.remove(key, pool);
+        pool.close();
+    }
+
+    private static ClientPool getPool(String host, int port) {
+        return pools.computeIfAbsent(host + ":" + port, key -> new ClientPool(host, port, poolSize));
+    }
+
+    private static ClientPool getDomainPool(ProviderConfig provider) {
+        String path = provider.getDomainSocket();
+        return pools.computeIfAbsent("unix:" + path, key -> new ClientPool(provider.getHost(), provider.getPort(), path, poolSize));
+    }
+
+    /**
+     * 服务提供方发布了 domain socket、地址是本机、并且 socket 文件存在时才使用，判断结果缓存下来
+     */
+    private static boolean useDomainSocket(ProviderConfig provider) {
+        String path = provider.getDomainSocket();
+        if (null == path || path.isEmpty()) {
+            return false;
+        }
+        return domainSockets.computeIfAbsent(provider.getHost() + ":" + provider.getPort(), key ->
+                Epoll.isAvailable() && isLocalHost(provider.getHost()) && Files.exists(Paths.get(path)));
+    }
+
+    private static boolean isLocalHost(String host) {
+        return localHosts.computeIfAbsent(host, key -> {
+            try {
+                InetAddress address = InetAddress.getByName(host);
+                return address.isLoopbackAddress() || address.isAnyLocalAddress() || null != NetworkInterface.getByInetAddress(address);
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 执行重试、对冲请求的线程池，这些任务选择连接、等待握手时可能阻塞，不能放在 IO 线程、时间轮线程或者公共的 ForkJoinPool 上
+     * 线程数和队列都有上限，队列满时 execute 抛出 RejectedExecutionException，由调用方让请求失败
+     */
+    public static Executor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (null != current) {
+            return current;
+        }
+        synchronized (ClientTransport.class) {
+            if (null == executor) {
+                int threads = Math.max(1, properties.getClientAsyncThreads());
+                ThreadPoolExecutor created = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, properties.getClientAsyncQueueSize())),
+                        new DefaultThreadFactory("rpc-client-async", true),
+                        new ThreadPoolExecutor.AbortPolicy());
+                created.allowCoreThreadTimeOut(true);
+                executor = created;
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * @param domainSocket 是否通过 domain socket 连接，domain socket 需要 epoll 的线程组
+     */
+    static Bootstrap getBootstrap(boolean domainSocket) {
+        Bootstrap current = domainSocket ? domainBootstrap : bootstrap;
+        if (null != current) {
+            return current;
+        }
+        synchronized (ClientTransport.class) {
+            if (domainSocket && null == domainBootstrap) {
+                domainEventLoopGroup = new EpollEventLoopGroup(ioThreads);
+                domainBootstrap = new Bootstrap()
+                        .group(domainEventLoopGroup)
+                        .channel(EpollDomainSocketChannel.class)
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000)
+                        .option(ChannelOption.WRITE_BUFFER_WATER_MARK, TransportFactory.waterMark(properties))
+                        .option(ChannelOption.ALLOCATOR, TransportFactory.allocator(properties))
+                        .handler(initializer());
+                logger.info("客户端 domain socket 线程组初始化完成");
+            }
+            if (!domainSocket && null == bootstrap) {
+                boolean epoll = TransportFactory.useEpoll(properties);
+                eventLoopGroup = TransportFactory.newGroup(epoll, ioThreads);
+                Bootstrap created = new Bootstrap()
+                        .group(eventLoopGroup)
+                        .channel(TransportFactory.channel(epoll))
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000)
+                        .handler(initializer());
+                TransportFactory.options(created, properties);
+                bootstrap = created;
+                logger.info("客户端线程组初始化完成, 每个服务端的连接数: {}, 传输: {}", poolSize,
+                        epoll ? TransportFactory.TRANSPORT_EPOLL : TransportFactory.TRANSPORT_NIO);
+            }
+            return domainSocket ? domainBootstrap : bootstrap;
+        }
+    }
+
+    private static ChannelInitializer<Channel> initializer() {
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                TransportFactory.coalescing(ch.pipeline(), properties);
+                ch.pipeline().addLast(
+                        new Encoder(),
+                        new Decoder(properties.getMaxFrameLength(), null)
+                );
+                TransportFactory.heartbeat(ch.pipeline(), properties, true);
+                // 每条连接有自己的 ClientHandler，保存在途请求表和方法字典
+                ch.pipeline().addLast(new ClientHandler(new PendingLimiter(properties.getClientMaxPending(), properties.getClientBackpressure())));
+            }
+        };
+    }
+
+    public static void shutdown() {
+        synchronized (ClientTransport.class) {
+            pools.values().forEach(ClientPool::close);
+            pools.clear();
+            pendingConnects.clear();
+            domainSockets.clear();
+            if (null != eventLoopGroup) {
+                eventLoopGroup.shutdownGracefully();
+                eventLoopGroup = null;
+                bootstrap = null;
+            }
+            if (null != domainEventLoopGroup) {
+                domainEventLoopGroup.shutdownGracefully();
+                domainEventLoopGroup = null;
+                domainBootstrap = null;
+            }
+            if (null != executor) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.aric.middleware.rpc.network;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个方法的自适应并发限制，参考 TCP Vegas 的思路：
+ * 以空载时的最小响应时间 rttNoLoad 为基准，根据当前的响应时间估算排队的请求数
+ * queue = limit * (1 - rttNoLoad / rtt)
+ * 排队少于 alpha（3 * log10(limit)）时增大限制，多于 beta（6 * log10(limit)）时减小限制，
+ * 请求被丢弃（派发队列满、超过截止时间）时直接减小
+ *
+ * 负载变化后最小响应时间可能不再准确，每隔一段采样重新测量一次
+ * 响应时间从 IO 线程收到请求开始计算，包含在派发队列中等待的时间
+ */
+public class ConcurrencyLimiter {
+    // 每 limit * PROBE_MULTIPLIER 个采样重新测量一次最小响应时间
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile int limit;
+    // 以下字段只在 synchronized 的 update 中访问
+    private double estimatedLimit;
+    private long rttNoLoad;
+    private long probeCountdown;
+
+    public ConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.estimatedLimit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.limit = (int) estimatedLimit;
+        this.probeCountdown = nextProbeCountdown();
+    }
+
+    /**
+     * 在途请求数达到限制时返回 null，调用方应立即拒绝请求
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return null;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return new Permit(this, System.nanoTime());
+            }
+        }
+    }
+
+    private void release(long start, boolean dropped) {
+        int current = inflight.getAndDecrement();
+        update(System.nanoTime() - start, current, dropped);
+    }
+
+    synchronized void update(long rtt, int inflight, boolean dropped) {
+        double limit = estimatedLimit;
+        double step = Math.max(1, Math.log10(limit));
+        double newLimit;
+        if (dropped) {
+            // 被丢弃的请求没有执行，响应时间没有参考价值
+            newLimit = limit - step;
+        } else if (--probeCountdown <= 0) {
+            // 重新测量空载响应时间
+            probeCountdown = nextProbeCountdown();
+            rttNoLoad = rtt;
+            return;
+        } else if (0 == rttNoLoad || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+            return;
+        } else if (inflight * 2 < limit) {
+            // 请求量本身没有达到限制，响应时间不能说明容量
+            return;
+        } else {
+            double queue = Math.ceil(limit * (1 - (double) rttNoLoad / rtt));
+            if (queue <= step) {
+                newLimit = limit + 6 * step;
+            } else if (queue < 3 * step) {
+                newLimit = limit + step;
+            } else if (queue > 6 * step) {
+                newLimit = limit - step;
+            } else {
+                return;
+            }
+        }
+
+        estimatedLimit = Math.max(1, Math.min(maxLimit, newLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    private long nextProbeCountdown() {
+        return (long) (estimatedLimit * PROBE_MULTIPLIER * (1 + ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * 因为超过限制被拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 一次请求占用的名额，请求完成（或者被丢弃）时释放一次
+     */
+    public static class Permit {
+        // 没有开启并发限制时使用
+        static final Permit UNLIMITED = new Permit(null, 0);
+
+        private final ConcurrencyLimiter limiter;
+        private final long start;
+
+        private Permit(ConcurrencyLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+
+        /**
+         * @param dropped 请求没有被执行（派发队列满、超过截止时间），视为过载的信号
+         */
+        public void release(boolean dropped) {
+            if (null != limiter) {
+                limiter.release(start, dropped);
+            }
+        }
+    }
+}
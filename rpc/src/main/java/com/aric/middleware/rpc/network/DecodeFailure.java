@@ -0,0 +1,35 @@
+package com.aric.middleware.rpc.network;
+
+/**
+ * 帧头完整、帧体无法反序列化的帧（类型不在白名单中、数据和序列化方式不匹配、序列化方式没有开启）
+ * 帧边界仍然是确定的，Decoder 不断开连接，而是交给后面的处理器只让对应的那个请求失败
+ */
+public class DecodeFailure {
+    private final byte type;
+    private final byte flags;
+    private final int requestId;
+    private final String error;
+
+    public DecodeFailure(byte type, byte flags, int requestId, String error) {
+        this.type = type;
+        this.flags = flags;
+        this.requestId = requestId;
+        this.error = error;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
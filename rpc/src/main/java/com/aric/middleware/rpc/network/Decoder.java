@@ -1,17 +1,49 @@
 package com.aric.middleware.rpc.network;
 
-import com.aric.middleware.rpc.utils.SerializeUtil;
+import com.aric.middleware.rpc.serialize.Serializer;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
+/**
+ * 按照 Protocol 中定义的帧格式解码，客户端和服务端共用
+ * 服务端只接受开启了的序列化方式；帧头中的序列化编号没有开启、或者帧体无法反序列化时输出 DecodeFailure，只让对应的请求失败
+ * 长度字段小于帧头或者超过 maxFrameLength 的帧说明数据已经错乱或者来自恶意的对端，丢弃缓冲的数据并断开连接，
+ * 不会按错误的长度读取，也不会无限制地缓冲
+ */
 public class Decoder extends ByteToMessageDecoder {
-    private Class<?> clzz;
+    private final int maxFrameLength;
+    // 下标为序列化编号，为 null 时接受所有已注册的序列化方式
+    private final boolean[] enabled;
 
-    public Decoder(Class<?> clzz) {
-        this.clzz = clzz;
+    public Decoder() {
+        this(Protocol.MAX_FRAME_LENGTH, null);
+    }
+
+    public Decoder(List<Integer> serializers) {
+        this(Protocol.MAX_FRAME_LENGTH, serializers);
+    }
+
+    /**
+     * @param maxFrameLength 长度字段的上限（字节）
+     * @param serializers    接受的序列化编号，为 null 时不限制；握手帧固定使用 protostuff、心跳帧没有帧体，两者不受限制
+     */
+    public Decoder(int maxFrameLength, List<Integer> serializers) {
+        this.maxFrameLength = maxFrameLength;
+        if (null == serializers) {
+            this.enabled = null;
+            return;
+        }
+        this.enabled = new boolean[128];
+        for (int id : serializers) {
+            this.enabled[id] = true;
+        }
     }
 
     @Override
@@ -22,16 +54,133 @@ public class Decoder extends ByteToMessageDecoder {
 
         in.markReaderIndex(); // 记下当前位置的索引
         int length = in.readInt(); // 读取消息内容的长度
+        // 在等待帧体之前检查，超长的帧不会被缓冲
+        if (length < Protocol.HEADER_LENGTH) {
+            throw discard(channelHandlerContext, in, new CorruptedFrameException("帧长度小于帧头: " + length));
+        }
+        if (length > maxFrameLength) {
+            throw discard(channelHandlerContext, in, new TooLongFrameException("帧长度 " + length + " 超过上限 " + maxFrameLength));
+        }
 
         if (in.readableBytes() < length) {
             in.resetReaderIndex(); // 如果没有足够的字节供读取，将索引重置回记号
             return;
         }
 
-        byte[] data = new byte[length];
-        in.readBytes(data);
+        short magic = in.readShort();
+        if (magic != Protocol.MAGIC) {
+            throw discard(channelHandlerContext, in, new CorruptedFrameException("非法的协议头: " + magic));
+        }
+        byte version = in.readByte();
+        if (version != Protocol.VERSION) {
+            throw discard(channelHandlerContext, in, new CorruptedFrameException("不支持的协议版本: " + version));
+        }
+        byte type = in.readByte();
+        byte flags = in.readByte();
+        byte serializerId = in.readByte();
+        int requestId = in.readInt();
+        int methodId = in.readInt();
+        // 按收到的时间把剩余的超时时间换算成本地的截止时间
+        long deadline = 0;
+        int headerLength = Protocol.HEADER_LENGTH;
+        if ((flags & Protocol.FLAG_DEADLINE) != 0) {
+            headerLength += 4;
+            if (length < headerLength) {
+                throw discard(channelHandlerContext, in, new CorruptedFrameException("帧长度小于帧头: " + length));
+            }
+            deadline = System.currentTimeMillis() + in.readInt();
+        }
+
+        // 直接从输入的 ByteBuf 中反序列化，不再拷贝到 byte[]
+        int bodyLength = length - headerLength;
+        int end = in.readerIndex() + bodyLength;
+        try {
+            Serializer serializer = SerializerFactory.get(serializerId);
+            if (null == serializer || !isEnabled(type, serializerId)) {
+                out.add(failure(type, flags, requestId, "不支持的序列化方式: " + serializerId));
+                return;
+            }
+            try {
+                out.add(decodeBody(type, flags, serializer, requestId, methodId, deadline, in, bodyLength));
+            } catch (DecoderException e) {
+                throw e;
+            } catch (Exception e) {
+                out.add(failure(type, flags, requestId, "反序列化失败: " + e));
+            }
+        } finally {
+            in.readerIndex(end);
+        }
+    }
+
+    /**
+     * 帧体无法反序列化时帧边界仍然确定，属于某个请求的帧只让这个请求失败，不影响同一条连接上的其他请求
+     * 握手等连接级别的帧无法单独失败，仍然抛出异常断开连接
+     */
+    private static DecodeFailure failure(byte type, byte flags, int requestId, String error) {
+        switch (type) {
+            case Protocol.TYPE_REQUEST:
+            case Protocol.TYPE_RESPONSE:
+            case Protocol.TYPE_BATCH:
+            case Protocol.TYPE_STREAM_CHUNK:
+            case Protocol.TYPE_STREAM_END:
+            case Protocol.TYPE_STREAM_CREDIT:
+            case Protocol.TYPE_STREAM_CANCEL:
+                return new DecodeFailure(type, flags, requestId, error);
+            default:
+                throw new DecoderException(error);
+        }
+    }
+
+    /**
+     * 帧边界已经无法确定，丢弃缓冲的数据并关闭连接，返回的异常由调用方抛出
+     */
+    private static DecoderException discard(ChannelHandlerContext ctx, ByteBuf in, DecoderException e) {
+        in.skipBytes(in.readableBytes());
+        ctx.close();
+        return e;
+    }
+
+    private boolean isEnabled(byte type, byte serializerId) {
+        if (null == enabled || type == Protocol.TYPE_HANDSHAKE || type == Protocol.TYPE_PING || type == Protocol.TYPE_PONG) {
+            return true;
+        }
+        return enabled[serializerId];
+    }
 
-        Object deserialize = SerializeUtil.deserialize(data, this.clzz);
-        out.add(deserialize);
+    private Object decodeBody(byte type, byte flags, Serializer serializer, int requestId, int methodId, long deadline, ByteBuf in, int bodyLength) throws Exception {
+        switch (type) {
+            case Protocol.TYPE_REQUEST:
+                Request request = serializer.deserialize(in, bodyLength, Request.class);
+                return request.withHeader(requestId, methodId, serializer.getId(), (flags & Protocol.FLAG_STREAM) != 0, deadline);
+            case Protocol.TYPE_RESPONSE:
+                Response response = serializer.deserialize(in, bodyLength, Response.class);
+                response.setRequestId(requestId);
+                response.setSerializer(serializer.getId());
+                return response;
+            case Protocol.TYPE_BATCH:
+                BatchRequest batch = serializer.deserialize(in, bodyLength, BatchRequest.class);
+                batch.setRequestId(requestId);
+                batch.setSerializer(serializer.getId());
+                batch.setDeadline(deadline);
+                return batch;
+            case Protocol.TYPE_STREAM_CHUNK:
+            case Protocol.TYPE_STREAM_END:
+            case Protocol.TYPE_STREAM_CREDIT:
+            case Protocol.TYPE_STREAM_CANCEL:
+                StreamFrame frame = serializer.deserialize(in, bodyLength, StreamFrame.class);
+                frame.setType(type);
+                frame.setRequestId(requestId);
+                frame.setSerializer(serializer.getId());
+                frame.setCredit(methodId);
+                return frame;
+            case Protocol.TYPE_HANDSHAKE:
+                return serializer.deserialize(in, bodyLength, Handshake.class);
+            case Protocol.TYPE_PING:
+                return Heartbeat.PING;
+            case Protocol.TYPE_PONG:
+                return Heartbeat.PONG;
+            default:
+                throw new DecoderException("不支持的消息类型: " + type);
+        }
     }
 }
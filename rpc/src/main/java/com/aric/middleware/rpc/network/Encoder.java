@@ -1,21 +1,72 @@
 package com.aric.middleware.rpc.network;
 
-import com.aric.middleware.rpc.utils.SerializeUtil;
+import com.aric.middleware.rpc.serialize.Serializer;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
-public class Encoder extends MessageToByteEncoder {
-    private Class<?> clzz;
+import java.io.IOException;
 
-    public Encoder(Class<?> clzz) {
-        this.clzz = clzz;
-    }
+/**
+ * 按照 Protocol 中定义的帧格式编码，客户端和服务端共用
+ * 消息直接序列化到池化的直接内存 ByteBuf 中，长度字段在序列化完成后回填
+ */
+public class Encoder extends MessageToByteEncoder<Object> {
 
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, Object o, ByteBuf out) throws Exception {
-        byte[] data = SerializeUtil.seriazlize(o);
-        out.writeInt(data.length); // 写入长度
-        out.writeBytes(data);      // 写入消息内容
+        if (o instanceof Request) {
+            Request request = (Request) o;
+            byte flags = request.isStream() ? Protocol.FLAG_STREAM : 0;
+            write(out, Protocol.TYPE_REQUEST, flags, request.getSerializer(), request.getRequestId(), request.getMethodId(), request.getTimeout(), request);
+        } else if (o instanceof Response) {
+            Response response = (Response) o;
+            byte flags = null == response.getError() ? 0 : Protocol.FLAG_ERROR;
+            write(out, Protocol.TYPE_RESPONSE, flags, response.getSerializer(), response.getRequestId(), 0, 0, response);
+        } else if (o instanceof BatchRequest) {
+            BatchRequest batch = (BatchRequest) o;
+            write(out, Protocol.TYPE_BATCH, (byte) 0, batch.getSerializer(), batch.getRequestId(), 0, batch.getTimeout(), batch);
+        } else if (o instanceof StreamFrame) {
+            StreamFrame frame = (StreamFrame) o;
+            byte flags = null == frame.getError() ? 0 : Protocol.FLAG_ERROR;
+            write(out, frame.getType(), flags, frame.getSerializer(), frame.getRequestId(), frame.getCredit(), 0, frame);
+        } else if (o instanceof Handshake) {
+            write(out, Protocol.TYPE_HANDSHAKE, (byte) 0, (byte) 0, 0, 0, 0, o);
+        } else if (o instanceof Heartbeat) {
+            write(out, ((Heartbeat) o).getType(), (byte) 0, (byte) 0, 0, 0, 0, null);
+        } else {
+            throw new EncoderException("不支持的消息类型: " + o.getClass().getName());
+        }
+    }
+
+    /**
+     * @param timeout 剩余的超时时间（毫秒），大于 0 时带上 FLAG_DEADLINE 写在帧头之后
+     * @param body    为 null 时只有帧头
+     */
+    private void write(ByteBuf out, byte type, byte flags, byte serializerId, int requestId, int methodId, int timeout, Object body) throws IOException {
+        // 未指定时使用默认的 protostuff
+        Serializer serializer = SerializerFactory.get(serializerId);
+        if (null == serializer) {
+            serializer = SerializerFactory.getDefault();
+        }
+
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0); // 长度占位，写完消息内容后回填
+        out.writeShort(Protocol.MAGIC);
+        out.writeByte(Protocol.VERSION);
+        out.writeByte(type);
+        out.writeByte(timeout > 0 ? flags | Protocol.FLAG_DEADLINE : flags);
+        out.writeByte(serializer.getId());
+        out.writeInt(requestId);
+        out.writeInt(methodId);
+        if (timeout > 0) {
+            out.writeInt(timeout);
+        }
+        if (null != body) {
+            serializer.serialize(body, out); // 写入消息内容
+        }
+        out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
     }
 }
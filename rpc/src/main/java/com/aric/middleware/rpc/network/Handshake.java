@@ -0,0 +1,28 @@
+package com.aric.middleware.rpc.network;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 握手消息，客户端发送时 methods 为空，服务端返回已暴露的方法字典
+ */
+public class Handshake {
+    private Map<String, Integer> methods; // 接口#方法签名 -> 方法 id
+    private List<Integer> serializers; // 服务端支持的序列化编号
+
+    public Map<String, Integer> getMethods() {
+        return methods;
+    }
+
+    public void setMethods(Map<String, Integer> methods) {
+        this.methods = methods;
+    }
+
+    public List<Integer> getSerializers() {
+        return serializers;
+    }
+
+    public void setSerializers(List<Integer> serializers) {
+        this.serializers = serializers;
+    }
+}
@@ -0,0 +1,19 @@
+package com.aric.middleware.rpc.network;
+
+/**
+ * 心跳消息，只有帧头，没有帧体
+ */
+public class Heartbeat {
+    public static final Heartbeat PING = new Heartbeat(Protocol.TYPE_PING);
+    public static final Heartbeat PONG = new Heartbeat(Protocol.TYPE_PONG);
+
+    private final byte type;
+
+    private Heartbeat(byte type) {
+        this.type = type;
+    }
+
+    public byte getType() {
+        return type;
+    }
+}
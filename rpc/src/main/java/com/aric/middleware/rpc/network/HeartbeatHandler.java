@@ -0,0 +1,65 @@
+package com.aric.middleware.rpc.network;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 配合前面的 IdleStateHandler 使用，客户端和服务端共用：
+ * 1. 读空闲时发送 PING，对端收到 PING 回复 PONG，心跳帧不再向后传递
+ * 2. 连续 maxIdle 次读空闲说明对端已经失效（宕机、网络中断后的半开连接），关闭连接，
+ * 客户端的在途请求随之失败，连接池在后台重新连接
+ * 服务端的 maxIdle 为 1，第一次读空闲就关闭，不主动发送 PING
+ */
+public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatHandler.class);
+
+    private final int maxIdle;
+    // 连续读空闲的次数，读到任何数据后 IdleStateHandler 重新发出 first 事件
+    private int idleCount;
+
+    public HeartbeatHandler() {
+        this(1);
+    }
+
+    /**
+     * @param maxIdle 连续读空闲达到该次数时关闭连接，之前的每次读空闲都发送 PING
+     */
+    public HeartbeatHandler(int maxIdle) {
+        this.maxIdle = Math.max(1, maxIdle);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg == Heartbeat.PING) {
+            ctx.writeAndFlush(Heartbeat.PONG);
+            return;
+        }
+        if (msg == Heartbeat.PONG) {
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent)) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        IdleStateEvent event = (IdleStateEvent) evt;
+        if (event.state() != IdleState.READER_IDLE) {
+            return;
+        }
+        idleCount = event.isFirst() ? 1 : idleCount + 1;
+        if (idleCount < maxIdle) {
+            ctx.writeAndFlush(Heartbeat.PING);
+            return;
+        }
+        logger.warn("连接长时间没有收到数据, 关闭连接: {}", ctx.channel().remoteAddress());
+        ctx.close();
+    }
+}
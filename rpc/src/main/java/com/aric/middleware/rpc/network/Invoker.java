@@ -0,0 +1,49 @@
+package com.aric.middleware.rpc.network;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * 预编译的服务方法调用器，在接口暴露时创建：
+ * 目标 Bean 已经绑定到 MethodHandle 上，参数展开和装箱拆箱也在创建时确定，
+ * 调用时不再需要查找 Bean、加载类和反射查找方法
+ */
+public class Invoker {
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final Object bean;
+    private final Method method;
+    // 类型统一为 (Object[])Object
+    private final MethodHandle handle;
+
+    public Invoker(Object bean, Method method) throws IllegalAccessException {
+        this.bean = bean;
+        this.method = method;
+
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非 public 的接口
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        }
+        this.handle = handle.bindTo(bean)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(null == args ? EMPTY_ARGS : args);
+    }
+
+    public Object getBean() {
+        return bean;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,106 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * 服务端已暴露方法的字典，在 ProviderBean 注册接口时为接口的每个方法分配一个整数 id，
+ * 同时创建好该方法的 Invoker，请求到达时通过方法 id 直接取数组下标即可拿到调用器
+ * 握手时整个字典会下发给客户端，之后请求中只需要携带方法 id
+ */
+public class MethodDictionary {
+
+    public static class Entry {
+        private final int id;
+        private final String signature;
+        private final Invoker invoker;
+
+        Entry(int id, String signature, Invoker invoker) {
+            this.id = id;
+            this.signature = signature;
+            this.invoker = invoker;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public Invoker getInvoker() {
+            return invoker;
+        }
+    }
+
+    // 下标即为方法 id，写时复制，读的时候不需要加锁
+    private static volatile Entry[] entries = new Entry[0];
+    private static final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * @param nozzle 接口全名
+     * @param bean   接口的实现，即 ref 对应的 Bean
+     */
+    public static synchronized void export(String nozzle, Object bean) throws ClassNotFoundException, IllegalAccessException {
+        Method[] methods = Class.forName(nozzle).getMethods();
+        // 参数和返回值的类型通常和接口定义在同一个包中
+        SerializerFactory.allowPackageOf(nozzle);
+        // 按签名排序，保证同一个接口每次分配的 id 顺序一致
+        Arrays.sort(methods, Comparator.comparing(method -> signature(nozzle, method)));
+
+        Entry[] copy = Arrays.copyOf(entries, entries.length + methods.length);
+        int size = entries.length;
+        for (Method method : methods) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String signature = signature(nozzle, method);
+            if (ids.containsKey(signature)) {
+                continue;
+            }
+            copy[size] = new Entry(size, signature, new Invoker(bean, method));
+            ids.put(signature, size);
+            size++;
+        }
+        entries = Arrays.copyOf(copy, size);
+    }
+
+    public static Entry get(int id) {
+        Entry[] entries = MethodDictionary.entries;
+        if (id < 0 || id >= entries.length) {
+            return null;
+        }
+        return entries[id];
+    }
+
+    /**
+     * 按方法签名查找，当前 JVM 没有暴露该方法时返回 null
+     */
+    public static synchronized Entry get(String signature) {
+        Integer id = ids.get(signature);
+        return null == id ? null : entries[id];
+    }
+
+    public static synchronized Map<String, Integer> getIds() {
+        return new HashMap<>(ids);
+    }
+
+    /**
+     * 方法签名：接口全名#方法名(参数类型1,参数类型2)
+     */
+    public static String signature(String nozzle, Method method) {
+        StringJoiner joiner = new StringJoiner(",", nozzle + "#" + method.getName() + "(", ")");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            joiner.add(parameterType.getName());
+        }
+        return joiner.toString();
+    }
+}
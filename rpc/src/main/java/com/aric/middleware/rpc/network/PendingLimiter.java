@@ -0,0 +1,179 @@
+package com.aric.middleware.rpc.network;
+
+import io.netty.channel.Channel;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端单条连接的背压：在途请求数达到 maxPending，或者连接的写缓冲超过高水位（不可写）时，新的请求不再写出
+ * wait: 请求进入等待队列，有请求完成或者连接恢复可写时按顺序发出，最多等到请求自己的超时时间
+ * fail: 立即以 CLIENT_BUSY 失败，由调用方决定是否换一个服务提供方重试
+ * 等待队列的长度同样以 maxPending 为上限，超过时按 fail 处理
+ */
+public class PendingLimiter {
+    public static final String POLICY_WAIT = "wait";
+    public static final String POLICY_FAIL = "fail";
+
+    private final int maxPending;
+    private final boolean failFast;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Queue<Waiter> queue = new ConcurrentLinkedQueue<>();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param maxPending 在途请求数的上限，0 表示不限制（同时也不检查可写状态）
+     * @param policy     达到上限时的处理方式：wait、fail
+     */
+    public PendingLimiter(int maxPending, String policy) {
+        this.maxPending = maxPending;
+        this.failFast = POLICY_FAIL.equalsIgnoreCase(policy);
+    }
+
+    /**
+     * 有名额时立即执行 send，否则按策略放入等待队列
+     *
+     * @param future 请求的结果，完成（收到响应、失败或者超时）时归还名额
+     * @return false 表示请求被拒绝，send 不会执行，调用方需要以 CLIENT_BUSY 结束请求
+     */
+    public boolean submit(Channel channel, CompletableFuture<?> future, Runnable send) {
+        // 已经断开的连接不可写，直接写出让请求立即失败，而不是等到超时
+        if (maxPending <= 0 || !channel.isActive()) {
+            send.run();
+            return true;
+        }
+        // 已经有请求在等待时排在它们后面
+        if (queue.isEmpty() && tryAcquire(channel)) {
+            start(channel, future, send);
+            return true;
+        }
+        if (failFast || waiting.incrementAndGet() > maxPending) {
+            if (!failFast) {
+                waiting.decrementAndGet();
+            }
+            rejected.increment();
+            return false;
+        }
+        Waiter waiter = new Waiter(future, send);
+        queue.offer(waiter);
+        waited.increment();
+        // 在等待中超时或者失败的请求立即移出队列，不再占用等待队列的名额
+        future.whenComplete((r, e) -> remove(waiter));
+        // 入队之前名额可能已经全部归还
+        drain(channel);
+        return true;
+    }
+
+    /**
+     * 连接断开时调用，等待中的请求立即以 cause 失败，不再等到超时
+     */
+    public void failAll(Throwable cause) {
+        Waiter waiter;
+        while (null != (waiter = queue.poll())) {
+            waiting.decrementAndGet();
+            waiter.future.completeExceptionally(cause);
+        }
+    }
+
+    private void remove(Waiter waiter) {
+        // 已经被 drain 或者 failAll 取走的不再重复计数
+        if (queue.remove(waiter)) {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 连接恢复可写或者有请求完成时调用，按顺序发出等待中的请求
+     */
+    public void drain(Channel channel) {
+        while (!queue.isEmpty() && tryAcquire(channel)) {
+            Waiter waiter = queue.poll();
+            if (null == waiter) {
+                pending.decrementAndGet();
+                return;
+            }
+            waiting.decrementAndGet();
+            if (waiter.future.isDone()) {
+                // 在等待中已经超时，还没来得及移出队列
+                pending.decrementAndGet();
+                continue;
+            }
+            start(channel, waiter.future, waiter.send);
+        }
+    }
+
+    private boolean tryAcquire(Channel channel) {
+        if (!channel.isWritable()) {
+            return false;
+        }
+        while (true) {
+            int current = pending.get();
+            if (current >= maxPending) {
+                return false;
+            }
+            if (pending.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void start(Channel channel, CompletableFuture<?> future, Runnable send) {
+        future.whenComplete((r, e) -> {
+            pending.decrementAndGet();
+            drain(channel);
+        });
+        send.run();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * 已经写出、还没有完成的请求数
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * 等待队列中的请求数
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * 累计进入过等待队列的请求数
+     */
+    public long getWaitedCount() {
+        return waited.sum();
+    }
+
+    /**
+     * 累计被拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static class Waiter {
+        private final CompletableFuture<?> future;
+        private final Runnable send;
+
+        private Waiter(CompletableFuture<?> future, Runnable send) {
+            this.future = future;
+            this.send = send;
+        }
+    }
+}
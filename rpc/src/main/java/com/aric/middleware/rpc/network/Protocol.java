@@ -0,0 +1,55 @@
+package com.aric.middleware.rpc.network;
+
+/**
+ * 二进制帧协议：
+ * +--------+-------+---------+------+-------+------------+-----------+----------+------+
+ * | length | magic | version | type | flags | serializer | requestId | methodId | body |
+ * | int    | short | byte    | byte | byte  | byte       | int       | int      |      |
+ * +--------+-------+---------+------+-------+------------+-----------+----------+------+
+ * length 为 length 字段之后的字节数，body 为 serializer 对应的序列化方式序列化后的内容
+ * length 小于帧头长度或者超过上限的帧视为非法，接收方直接断开连接
+ *
+ * 连接建立后客户端先发送握手帧，服务端返回 "接口#方法签名 -> 方法 id" 的字典以及支持的序列化方式，
+ * 之后的请求帧只携带方法 id 和参数，握手帧固定使用 protostuff 序列化
+ *
+ * 流式调用（请求帧带 FLAG_STREAM）：
+ * 客户端发送请求后通过 STREAM_CREDIT 帧授予额度（methodId 字段为授予的条数），
+ * 服务端在额度内用 STREAM_CHUNK 帧分批发送结果，最后发送 STREAM_END 帧，
+ * 客户端提前结束时发送 STREAM_CANCEL 帧
+ *
+ * 超时（请求帧和批量帧带 FLAG_DEADLINE）：
+ * 帧头之后多一个 int，为调用方剩余的超时时间（毫秒），接收方按收到的时间换算成本地的截止时间，
+ * 传递剩余时间而不是绝对时间，两端的时钟不需要同步
+ *
+ * 批量调用：BATCH 帧的帧体为多次调用的方法 id 和参数，服务端返回一个普通的响应帧，结果为按顺序排列的 BatchResponse
+ *
+ * 心跳：客户端一段时间没有写出时发送 PING 帧，服务端回复 PONG 帧，两者都没有帧体；
+ * 任意一端超过一段时间没有读到数据时认为连接已经失效（对端宕机、网络中断导致的半开连接），主动关闭
+ */
+public class Protocol {
+    public static final short MAGIC = 0x5250;
+    public static final byte VERSION = 4;
+
+    // 帧头长度（不包含 length 字段）
+    public static final int HEADER_LENGTH = 2 + 1 + 1 + 1 + 1 + 4 + 4;
+    // length 字段默认的上限，可以通过 ServerProperties.maxFrameLength 调整
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    public static final byte TYPE_HANDSHAKE = 1;
+    public static final byte TYPE_REQUEST = 2;
+    public static final byte TYPE_RESPONSE = 3;
+    public static final byte TYPE_STREAM_CHUNK = 4;
+    public static final byte TYPE_STREAM_END = 5;
+    public static final byte TYPE_STREAM_CREDIT = 6;
+    public static final byte TYPE_STREAM_CANCEL = 7;
+    public static final byte TYPE_BATCH = 8;
+    public static final byte TYPE_PING = 9;
+    public static final byte TYPE_PONG = 10;
+
+    // 响应为异常结果
+    public static final byte FLAG_ERROR = 1;
+    // 请求为流式调用
+    public static final byte FLAG_STREAM = 2;
+    // 帧头之后带有剩余的超时时间
+    public static final byte FLAG_DEADLINE = 4;
+}
@@ -1,51 +1,87 @@
 package com.aric.middleware.rpc.network;
 
-import com.aric.middleware.rpc.config.ProviderConfig;
+import com.alibaba.fastjson.annotation.JSONCreator;
+import com.alibaba.fastjson.annotation.JSONField;
 
+/**
+ * 请求 id、方法 id 和序列化编号放在帧头中，不参与序列化，帧体只包含参数
+ * 请求对象创建后不可修改，同一个对象可以被多个线程同时读取；分配请求 id、调整超时时间都通过 with 方法得到一个新的对象
+ */
 public class Request {
-    private String uuid;
-    private ProviderConfig providerConfig;
-    private String methodName;
-    private Class<?>[] parameterTypes;
-    private Object[] args;
+    private final transient int requestId;
+    private final transient int methodId;
+    private final transient byte serializer; // 序列化编号，放在帧头中
+    private final transient boolean stream; // 流式调用，对应帧头中的 FLAG_STREAM
+    private final transient int timeout; // 超时时间（毫秒），对应帧头中的 FLAG_DEADLINE
+    private final transient long deadline; // 服务端收到请求时换算出的截止时间，0 表示没有限制
+    private final Object[] args;
 
-    public Object[] getArgs() {
-        return args;
+    /**
+     * 反序列化时只有帧体中的参数，帧头由 Decoder 通过 withHeader 补上
+     */
+    @JSONCreator
+    private Request(@JSONField(name = "args") Object[] args) {
+        this(0, 0, (byte) 0, false, 0, 0, args);
+    }
+
+    /**
+     * @param timeout 超时时间（毫秒），0 表示不告知服务端
+     */
+    public Request(int methodId, byte serializer, int timeout, Object[] args) {
+        this(0, methodId, serializer, false, timeout, 0, args);
     }
 
-    public void setArgs(Object[] args) {
+    private Request(int requestId, int methodId, byte serializer, boolean stream, int timeout, long deadline, Object[] args) {
+        this.requestId = requestId;
+        this.methodId = methodId;
+        this.serializer = serializer;
+        this.stream = stream;
+        this.timeout = timeout;
+        this.deadline = deadline;
         this.args = args;
     }
 
-    public Class<?>[] getParameterTypes() {
-        return parameterTypes;
+    public Request withRequestId(int requestId) {
+        return new Request(requestId, methodId, serializer, stream, timeout, deadline, args);
+    }
+
+    public Request withTimeout(int timeout) {
+        return new Request(requestId, methodId, serializer, stream, timeout, deadline, args);
     }
 
-    public void setParameterTypes(Class<?>[] parameterTypes) {
-        this.parameterTypes = parameterTypes;
+    public Request withStream(boolean stream) {
+        return new Request(requestId, methodId, serializer, stream, timeout, deadline, args);
+    }
+
+    Request withHeader(int requestId, int methodId, byte serializer, boolean stream, long deadline) {
+        return new Request(requestId, methodId, serializer, stream, timeout, deadline, args);
+    }
+
+    public Object[] getArgs() {
+        return args;
     }
 
-    public String getUuid() {
-        return uuid;
+    public int getRequestId() {
+        return requestId;
     }
 
-    public void setUuid(String uuid) {
-        this.uuid = uuid;
+    public int getMethodId() {
+        return methodId;
     }
 
-    public ProviderConfig getProviderConfig() {
-        return providerConfig;
+    public byte getSerializer() {
+        return serializer;
     }
 
-    public void setProviderConfig(ProviderConfig providerConfig) {
-        this.providerConfig = providerConfig;
+    public boolean isStream() {
+        return stream;
     }
 
-    public String getMethodName() {
-        return methodName;
+    public int getTimeout() {
+        return timeout;
     }
 
-    public void setMethodName(String methodName) {
-        this.methodName = methodName;
+    public long getDeadline() {
+        return deadline;
     }
 }
@@ -1,14 +1,23 @@
 package com.aric.middleware.rpc.network;
 
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+
+/**
+ * 请求 id 和序列化编号放在帧头中，不参与序列化
+ */
 public class Response {
-    private String requestId;
+    private transient int requestId;
+    private transient byte serializer; // 序列化编号，放在帧头中
     private Object result;
+    private String error; // 服务端执行异常时的错误信息
+    private int code; // 错误码，0 表示服务方法本身抛出的异常（SERVER_ERROR）
 
-    public String getRequestId() {
+    public int getRequestId() {
         return requestId;
     }
 
-    public void setRequestId(String requestId) {
+    public void setRequestId(int requestId) {
         this.requestId = requestId;
     }
 
@@ -19,4 +28,36 @@ public class Response {
     public void setResult(Object result) {
         this.result = result;
     }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public void setCode(int code) {
+        this.code = code;
+    }
+
+    /**
+     * 按错误码转换成调用方抛出的异常，调用方可以据此区分过载、繁忙等可以换一个服务端重试的错误
+     */
+    public RpcException toException() {
+        RpcErrorCode errorCode = RpcErrorCode.of(code);
+        return new RpcException(null == errorCode ? RpcErrorCode.SERVER_ERROR : errorCode, error);
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
 }
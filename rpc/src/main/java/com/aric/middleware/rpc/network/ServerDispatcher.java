@@ -0,0 +1,175 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.config.ServerProperties;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端解码之后、调用服务方法之前的派发阶段，避免慢方法阻塞 Netty 的 IO 线程
+ * 支持三种模式：
+ * inline: 直接在 IO 线程上执行
+ * pool: 提交到有界线程池，队列满时按照拒绝策略处理
+ * virtual: 每个请求一个虚拟线程，需要 Java 21 及以上，低版本退化为 pool 模式
+ *
+ * 开启并发限制（vegas）时，每个方法有自己的 ConcurrencyLimiter，请求在 IO 线程上先申请名额，
+ * 超过限制的请求不进入派发队列，直接返回服务端过载
+ */
+public class ServerDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ServerDispatcher.class);
+
+    public static final String MODE_INLINE = "inline";
+    public static final String MODE_POOL = "pool";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    public static final String REJECT_ABORT = "abort";
+    public static final String REJECT_CALLER_RUNS = "caller_runs";
+
+    public static final String LIMIT_NONE = "none";
+    public static final String LIMIT_VEGAS = "vegas";
+
+    private final String mode;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor threadPool;
+    private final boolean callerRuns;
+
+    // 已提交但还未执行完的任务数
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    // 方法 id -> 并发限制，没有开启时为 null
+    private final Map<Integer, ConcurrencyLimiter> limiters;
+    private final int limitInitial;
+    private final int limitMax;
+
+    private ServerDispatcher(String mode, ExecutorService executor, ServerProperties properties) {
+        this.mode = mode;
+        this.executor = executor;
+        this.threadPool = executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+        this.callerRuns = REJECT_CALLER_RUNS.equalsIgnoreCase(properties.getRejectPolicy());
+        this.limiters = LIMIT_VEGAS.equalsIgnoreCase(properties.getConcurrencyLimit()) ? new ConcurrentHashMap<>() : null;
+        this.limitInitial = properties.getConcurrencyLimitInitial();
+        this.limitMax = properties.getConcurrencyLimitMax();
+    }
+
+    public static ServerDispatcher create(ServerProperties properties) {
+        String mode = null == properties.getDispatchMode() ? MODE_POOL : properties.getDispatchMode().toLowerCase();
+
+        if (MODE_INLINE.equals(mode)) {
+            return new ServerDispatcher(MODE_INLINE, null, properties);
+        }
+        if (MODE_VIRTUAL.equals(mode)) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (null != executor) {
+                return new ServerDispatcher(MODE_VIRTUAL, executor, properties);
+            }
+            logger.warn("当前 JDK 不支持虚拟线程, 使用线程池模式");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                properties.getDispatchThreads(), properties.getDispatchThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getDispatchQueueSize()),
+                new DefaultThreadFactory("rpc-dispatch", true),
+                new ThreadPoolExecutor.AbortPolicy());
+        return new ServerDispatcher(MODE_POOL, executor, properties);
+    }
+
+    /**
+     * 为一次方法调用申请并发名额，超过限制时返回 null，没有开启并发限制时总是成功
+     */
+    public ConcurrencyLimiter.Permit acquire(int methodId) {
+        if (null == limiters) {
+            return ConcurrencyLimiter.Permit.UNLIMITED;
+        }
+        return limiters.computeIfAbsent(methodId, id -> new ConcurrencyLimiter(limitInitial, limitMax)).tryAcquire();
+    }
+
+    /**
+     * 每个方法当前的并发限制，没有开启时为空
+     */
+    public Map<Integer, ConcurrencyLimiter> getLimiters() {
+        return null == limiters ? Collections.emptyMap() : Collections.unmodifiableMap(limiters);
+    }
+
+    /**
+     * 派发任务，任务被拒绝且拒绝策略为 abort 时执行 onRejected
+     */
+    public void dispatch(Runnable task, Runnable onRejected) {
+        if (null == executor) {
+            task.run();
+            return;
+        }
+
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejected.increment();
+            if (callerRuns) {
+                task.run();
+            } else {
+                onRejected.run();
+            }
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 排队中的任务数，virtual 模式下没有队列，为正在执行的任务数
+     */
+    public int getQueueDepth() {
+        if (null != threadPool) {
+            return threadPool.getQueue().size();
+        }
+        return pending.get();
+    }
+
+    /**
+     * 已提交但还未执行完的任务数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public void shutdown() {
+        if (null != executor) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // 通过反射创建，保证在 Java 17 下也能编译
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
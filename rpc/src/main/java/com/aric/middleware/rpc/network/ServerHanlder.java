@@ -1,48 +1,323 @@
 package com.aric.middleware.rpc.network;
 
-import com.alibaba.fastjson.JSON;
-import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.proxy.RpcContext;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeansException;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 
-import java.lang.reflect.Method;
-import java.time.LocalTime;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 public class ServerHanlder extends ChannelInboundHandlerAdapter {
     private final Logger logger = LoggerFactory.getLogger(ServerHanlder.class);
 
-    private transient ApplicationContext applicationContext;
+    private final ServerDispatcher dispatcher;
+    // 开启的序列化编号，握手时下发给客户端
+    private final List<Integer> serializers;
 
-    public ServerHanlder(ApplicationContext applicationContext) {
-        this.applicationContext = applicationContext;
+    // 这条连接上进行中的流式调用
+    private final Map<Integer, ServerStream> streams = new ConcurrentHashMap<>();
+
+    public ServerHanlder(ServerDispatcher dispatcher) {
+        this(dispatcher, SerializerFactory.getIds());
+    }
+
+    public ServerHanlder(ServerDispatcher dispatcher, List<Integer> serializers) {
+        this.dispatcher = dispatcher;
+        this.serializers = serializers;
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 握手，下发方法字典
+        if (msg instanceof Handshake) {
+            Handshake handshake = new Handshake();
+            handshake.setMethods(MethodDictionary.getIds());
+            handshake.setSerializers(serializers);
+            ctx.writeAndFlush(handshake);
+            return;
+        }
+
+        // 帧体无法反序列化，只让这一个请求失败，连接上的其他请求不受影响
+        if (msg instanceof DecodeFailure) {
+            onDecodeFailure(ctx, (DecodeFailure) msg);
+            return;
+        }
+
+        // 流式调用的额度和取消
+        if (msg instanceof StreamFrame) {
+            StreamFrame frame = (StreamFrame) msg;
+            ServerStream stream = streams.get(frame.getRequestId());
+            if (null == stream) {
+                return;
+            }
+            if (frame.getType() == Protocol.TYPE_STREAM_CREDIT) {
+                stream.addCredit(frame.getCredit());
+            } else if (frame.getType() == Protocol.TYPE_STREAM_CANCEL) {
+                stream.cancel();
+            }
+            return;
+        }
+
+        // 批量调用整体作为一个任务派发，结果按顺序一起返回，每个调用单独申请并发名额
+        if (msg instanceof BatchRequest) {
+            BatchRequest batch = (BatchRequest) msg;
+            List<BatchRequest.Call> calls = batch.getCalls();
+            ConcurrencyLimiter.Permit[] permits = new ConcurrencyLimiter.Permit[calls.size()];
+            for (int i = 0; i < permits.length; i++) {
+                permits[i] = dispatcher.acquire(calls.get(i).getMethodId());
+            }
+            dispatcher.dispatch(() -> invokeBatch(ctx, batch, permits), () -> rejectBatch(ctx, batch, permits));
+            return;
+        }
+
+        // 服务方法交给派发器执行，不占用 IO 线程
         Request request = (Request) msg;
-        logger.info("server 接收到信息: {}", JSON.toJSONString(request));
+        ConcurrencyLimiter.Permit permit = null;
+        if (request.isStream()) {
+            // 在 IO 线程上登记，保证之后到达的额度帧能找到这个流
+            int requestId = request.getRequestId();
+            streams.put(requestId, new ServerStream(ctx, requestId, request.getSerializer(), dispatcher, () -> streams.remove(requestId)));
+        } else {
+            // 超过并发限制的请求不进入派发队列，直接返回过载
+            permit = dispatcher.acquire(request.getMethodId());
+            if (null == permit) {
+                write(ctx, request, overload(request.getMethodId()));
+                return;
+            }
+        }
+        ConcurrencyLimiter.Permit acquired = permit;
+        dispatcher.dispatch(() -> invoke(ctx, request, acquired), () -> reject(ctx, request, acquired));
+    }
+
+    private void onDecodeFailure(ChannelHandlerContext ctx, DecodeFailure failure) {
+        logger.warn("server 无法解析请求: {}, {}", failure.getRequestId(), failure.getError());
+        // 错误响应使用默认的序列化方式，客户端总是能解析
+        byte serializer = SerializerFactory.getDefault().getId();
+        switch (failure.getType()) {
+            case Protocol.TYPE_REQUEST:
+            case Protocol.TYPE_BATCH:
+                if ((failure.getFlags() & Protocol.FLAG_STREAM) != 0) {
+                    StreamFrame end = new StreamFrame(Protocol.TYPE_STREAM_END, failure.getRequestId(), serializer);
+                    end.setError(failure.getError());
+                    ctx.writeAndFlush(end);
+                    return;
+                }
+                Response response = errorResponse(RpcErrorCode.SERIALIZE_ERROR, failure.getError());
+                response.setRequestId(failure.getRequestId());
+                response.setSerializer(serializer);
+                ctx.writeAndFlush(response);
+                return;
+            case Protocol.TYPE_STREAM_CREDIT:
+            case Protocol.TYPE_STREAM_CANCEL:
+                // 额度无法解析时流无法继续，结束这个流
+                ServerStream stream = streams.get(failure.getRequestId());
+                if (null != stream) {
+                    stream.fail(failure.getError());
+                }
+                return;
+            default:
+                // 客户端才会收到的帧类型，忽略
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        for (ServerStream stream : streams.values()) {
+            stream.cancel();
+        }
+        super.channelInactive(ctx);
+    }
+
+    private void invoke(ChannelHandlerContext ctx, Request request, ConcurrencyLimiter.Permit permit) {
+        // 每个请求都会经过这里，只在 DEBUG 级别输出
+        if (logger.isDebugEnabled()) {
+            logger.debug("server 接收到请求: {}, 方法: {}", request.getRequestId(), request.getMethodId());
+        }
+
+        // 流式调用，结果按客户端的额度分批发送
+        if (request.isStream()) {
+            try {
+                startStream(request, lookup(request.getMethodId()).getInvoker().invoke(request.getArgs()));
+            } catch (Throwable e) {
+                logger.error("server 调用方法异常: {}", request.getMethodId(), e);
+                failStream(request, errorMessage(e));
+            }
+            return;
+        }
+
+        call(request.getMethodId(), request.getArgs(), request.getDeadline(), permit).thenAccept(response -> write(ctx, request, response));
+    }
+
+    private void write(ChannelHandlerContext ctx, Request request, Response response) {
+        response.setRequestId(request.getRequestId());
+        // 使用和请求相同的序列化方式返回
+        response.setSerializer(request.getSerializer());
+        ctx.writeAndFlush(response);
+    }
 
-        // 调用方法并返回
-        ProviderConfig providerConfig = request.getProviderConfig();
+    /**
+     * 依次执行批量中的每个调用，全部完成后在一个响应中按顺序返回
+     * 某个调用失败只体现在对应位置的 Response 上，不影响其他调用
+     */
+    private void invokeBatch(ChannelHandlerContext ctx, BatchRequest batch, ConcurrencyLimiter.Permit[] permits) {
+        List<BatchRequest.Call> calls = batch.getCalls();
+        if (logger.isDebugEnabled()) {
+            logger.debug("server 接收到批量请求: {}, 调用数: {}", batch.getRequestId(), calls.size());
+        }
 
-        Object bean = this.applicationContext.getBean(providerConfig.getRef());
-        Class<?> clzz = Class.forName(providerConfig.getNozzle());
-        Method method = clzz.getMethod(request.getMethodName(), request.getParameterTypes());
-        Object result = method.invoke(bean, request.getArgs());
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Response>[] futures = new CompletableFuture[calls.size()];
+        for (int i = 0; i < futures.length; i++) {
+            BatchRequest.Call call = calls.get(i);
+            futures[i] = call(call.getMethodId(), call.getArgs(), batch.getDeadline(), permits[i]);
+        }
 
+        CompletableFuture.allOf(futures).thenRun(() -> {
+            List<Response> responses = new ArrayList<>(futures.length);
+            for (CompletableFuture<Response> future : futures) {
+                responses.add(future.join());
+            }
+            Response response = new Response();
+            response.setRequestId(batch.getRequestId());
+            response.setSerializer(batch.getSerializer());
+            response.setResult(new BatchResponse(responses));
+            ctx.writeAndFlush(response);
+        });
+    }
+
+    /**
+     * 调用一次服务方法，返回的 future 总是正常完成，调用的异常记录在 Response 的错误信息中
+     * 服务方法本身是异步的，等结果完成后 future 才完成，不占用派发线程
+     *
+     * @param deadline 请求的截止时间，已经过了截止时间的请求调用方已经放弃，不再执行
+     * @param permit   申请到的并发名额，为 null 表示超过了并发限制，调用完成时释放
+     */
+    private CompletableFuture<Response> call(int methodId, Object[] args, long deadline, ConcurrencyLimiter.Permit permit) {
+        if (null == permit) {
+            return CompletableFuture.completedFuture(overload(methodId));
+        }
+        if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+            logger.warn("server 请求已超过截止时间, 不再执行: {}", methodId);
+            permit.release(true);
+            return CompletableFuture.completedFuture(errorResponse(RpcErrorCode.TIMEOUT_ERROR, "请求在派发队列中已超过截止时间"));
+        }
         Response response = new Response();
-        response.setRequestId(request.getUuid());
-        response.setResult(result);
+        RpcContext context = RpcContext.getContext();
+        try {
+            // 服务方法中再发起的 rpc 调用只能使用剩余的时间
+            context.setDeadline(deadline);
+            // 根据方法 id 找到要调用的方法
+            Object result = lookup(methodId).getInvoker().invoke(args);
+            if (result instanceof CompletionStage) {
+                return ((CompletionStage<?>) result).handle((value, e) -> {
+                    permit.release(false);
+                    if (null != e) {
+                        response.setError(errorMessage(e));
+                    } else {
+                        response.setResult(value);
+                    }
+                    return response;
+                }).toCompletableFuture();
+            }
+            response.setResult(result);
+        } catch (Throwable e) {
+            logger.error("server 调用方法异常: {}", methodId, e);
+            response.setError(errorMessage(e));
+        } finally {
+            context.setDeadline(0);
+        }
+        permit.release(false);
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private MethodDictionary.Entry lookup(int methodId) {
+        MethodDictionary.Entry entry = MethodDictionary.get(methodId);
+        if (null == entry) {
+            throw new RpcException(RpcErrorCode.METHOD_NOT_FOUND, String.valueOf(methodId));
+        }
+        return entry;
+    }
+
+    private void startStream(Request request, Object result) {
+        ServerStream stream = streams.get(request.getRequestId());
+        if (null == stream) {
+            return; // 已经被取消
+        }
+        // 返回 CompletionStage 的方法等结果完成后再开始
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, e) -> {
+                if (null != e) {
+                    stream.fail(errorMessage(e));
+                } else {
+                    stream.start(value);
+                }
+            });
+            return;
+        }
+        stream.start(result);
+    }
+
+    private void failStream(Request request, String error) {
+        ServerStream stream = streams.get(request.getRequestId());
+        if (null != stream) {
+            stream.fail(error);
+        }
+    }
+
+    private void reject(ChannelHandlerContext ctx, Request request, ConcurrencyLimiter.Permit permit) {
+        if (request.isStream()) {
+            failStream(request, RpcErrorCode.SERVER_BUSY.getMessage());
+            return;
+        }
+        permit.release(true);
+        write(ctx, request, errorResponse(RpcErrorCode.SERVER_BUSY, "派发队列已满"));
+    }
+
+    private void rejectBatch(ChannelHandlerContext ctx, BatchRequest batch, ConcurrencyLimiter.Permit[] permits) {
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            if (null != permit) {
+                permit.release(true);
+            }
+        }
+        Response response = errorResponse(RpcErrorCode.SERVER_BUSY, "派发队列已满");
+        response.setRequestId(batch.getRequestId());
+        response.setSerializer(batch.getSerializer());
         ctx.writeAndFlush(response);
     }
 
+    private Response overload(int methodId) {
+        return errorResponse(RpcErrorCode.OVERLOAD, "方法 " + methodId + " 超过并发限制");
+    }
+
+    private Response errorResponse(RpcErrorCode code, String error) {
+        Response response = new Response();
+        response.setCode(code.getCode());
+        response.setError(error);
+        return response;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // 帧体的反序列化失败已经由 DecodeFailure 处理，到这里的都是帧格式错误，连接上的数据已经无法继续解析
+        logger.warn("server 连接异常, 关闭连接: {}, {}", ctx.channel().remoteAddress(), cause.toString());
         ctx.close();
     }
+
+    private String errorMessage(Throwable e) {
+        if ((e instanceof InvocationTargetException || e instanceof CompletionException) && null != e.getCause()) {
+            e = e.getCause();
+        }
+        return e.toString();
+    }
 }
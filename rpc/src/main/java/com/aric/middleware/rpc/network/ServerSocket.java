@@ -1,79 +1,209 @@
 package com.aric.middleware.rpc.network;
 
 import com.aric.middleware.rpc.config.LocalServer;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import org.springframework.context.ApplicationContext;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务端，start 在端口绑定完成后返回，不需要额外的线程等待
+ * 线程组、通道类型和 socket 参数由 ServerProperties 配置，transport=epoll 时使用 Netty 的 epoll 实现（不可用时退回 nio）
+ * 配置了 domain socket 路径并且支持 epoll（Linux）时，同时监听该路径的 Unix domain socket，同一台机器上的消费者优先使用
+ */
+public class ServerSocket {
+    private static final Logger logger = LoggerFactory.getLogger(ServerSocket.class);
 
-public class ServerSocket implements Runnable {
     private ChannelFuture channelFuture;
+    // 开启 SO_REUSEPORT 时绑定在同一端口上的其他 socket
+    private final List<Channel> acceptors = new ArrayList<>();
+    private Channel domainChannel;
 
     private int port;
+    private final String domainSocket;
+    private final ServerProperties properties;
+
+    private final ServerDispatcher dispatcher;
+    // 服务端接受的序列化编号
+    private final List<Integer> serializers;
+
+    public ServerSocket(int port, ServerDispatcher dispatcher) {
+        this(port, null, dispatcher);
+    }
 
-    private transient ApplicationContext applicationContext;
+    /**
+     * @param domainSocket Unix domain socket 的路径，为空时只监听 TCP 端口
+     */
+    public ServerSocket(int port, String domainSocket, ServerDispatcher dispatcher) {
+        this(port, domainSocket, new ServerProperties(), dispatcher);
+    }
+
+    /**
+     * 端口、domain socket 路径和网络参数都从 properties 中读取
+     */
+    public ServerSocket(ServerProperties properties, ServerDispatcher dispatcher) {
+        this(properties.getPort(), properties.getDomainSocket(), properties, dispatcher);
+    }
 
-    public ServerSocket(ApplicationContext applicationContext, int port) {
-        this.applicationContext = applicationContext;
+    private ServerSocket(int port, String domainSocket, ServerProperties properties, ServerDispatcher dispatcher) {
         this.port = port;
+        this.domainSocket = domainSocket;
+        this.properties = properties;
+        this.dispatcher = dispatcher;
+        this.serializers = SerializerFactory.getIds(properties.getSerializers());
     }
 
-    @Override
-    public void run() {
+    public void start() {
+        boolean epoll = TransportFactory.useEpoll(properties);
+        // SO_REUSEPORT 只有 epoll 支持，每个接受连接的线程各绑定一次端口
+        boolean reusePort = epoll && properties.isReusePort();
+        int bossThreads = Math.max(1, properties.getBossThreads());
         //创建两个线程组 boosGroup、workerGroup
-        EventLoopGroup bossGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        EventLoopGroup bossGroup = TransportFactory.newGroup(epoll, bossThreads);
+        EventLoopGroup workerGroup = TransportFactory.newGroup(epoll, properties.getIoThreads());
         try {
             //创建服务端的启动对象，设置参数
             ServerBootstrap bootstrap = new ServerBootstrap();
             //设置两个线程组boosGroup和workerGroup
             bootstrap.group(bossGroup, workerGroup)
                     //设置服务端通道实现类型
-                    .channel(NioServerSocketChannel.class)
+                    .channel(TransportFactory.serverChannel(epoll))
                     //设置线程队列得到连接个数
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    //设置保持活动连接状态
-                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .option(ChannelOption.SO_BACKLOG, properties.getSoBacklog())
                     //使用匿名内部类的形式初始化通道对象
-                    .childHandler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        protected void initChannel(SocketChannel socketChannel) throws Exception {
-                            //给pipeline管道设置处理器
-                            socketChannel.pipeline().addLast(
-                                    new Encoder(Response.class),
-                                    new Decoder(Request.class),
-                                    new ServerHanlder(applicationContext)
-                            );
-                        }
-                    });
-
-            //绑定端口号，启动服务端
+                    .childHandler(initializer());
+            //设置保持活动连接状态、TCP_NODELAY、写缓冲水位和内存池
+            TransportFactory.childOptions(bootstrap, properties);
+            if (reusePort) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            //绑定端口号，等待绑定完成
             int port = getIdlePort();
-            System.out.println("port: " + port);
             this.channelFuture = bootstrap.bind(port).sync();
+            // 端口配置为 0 时由系统分配，之后的绑定和发布都使用实际监听的端口
+            port = ((InetSocketAddress) channelFuture.channel().localAddress()).getPort();
+            this.port = port;
+            for (int i = 1; reusePort && i < bossThreads; i++) {
+                acceptors.add(bootstrap.bind(port).sync().channel());
+            }
             LocalServer.setHost("127.0.0.1");
             LocalServer.setPort(port);
-            //对关闭通道进行监听
-            this.channelFuture.channel().closeFuture().sync();
-            System.out.println("服务端关闭");
+            logger.info("服务端启动完成, 端口: {}, 传输: {}, 接受连接的 socket 数: {}", port,
+                    epoll ? TransportFactory.TRANSPORT_EPOLL : TransportFactory.TRANSPORT_NIO, 1 + acceptors.size());
+            startDomainSocket(epoll ? bossGroup : null, epoll ? workerGroup : null);
         } catch (Exception e) {
-          throw new RuntimeException(e);
-        } finally {
-            System.out.println("finally 关闭");
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
+            dispatcher.shutdown();
+            throw new RuntimeException("服务端启动失败, 端口: " + port, e);
+        }
+
+        //通道关闭时释放线程组
+        this.channelFuture.channel().closeFuture().addListener(future -> {
+            logger.info("服务端关闭");
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            dispatcher.shutdown();
+        });
+    }
+
+    /**
+     * domain socket 启动失败不影响 TCP 端口，消费者仍然可以通过 TCP 调用
+     * TCP 使用 epoll 时共用它的线程组，否则单独创建 epoll 的线程组
+     */
+    private void startDomainSocket(EventLoopGroup sharedBossGroup, EventLoopGroup sharedWorkerGroup) {
+        if (null == domainSocket || domainSocket.isEmpty()) {
+            return;
+        }
+        if (!Epoll.isAvailable()) {
+            logger.warn("当前系统不支持 epoll, 不监听 domain socket: {}", domainSocket);
+            return;
+        }
+        boolean shared = null != sharedBossGroup;
+        EventLoopGroup bossGroup = shared ? sharedBossGroup : new EpollEventLoopGroup(1);
+        EventLoopGroup workerGroup = shared ? sharedWorkerGroup : new EpollEventLoopGroup();
+        try {
+            // 上次异常退出时遗留的 socket 文件
+            Files.deleteIfExists(Paths.get(domainSocket));
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(bossGroup, workerGroup)
+                    .channel(EpollServerDomainSocketChannel.class)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, TransportFactory.waterMark(properties))
+                    .childOption(ChannelOption.ALLOCATOR, TransportFactory.allocator(properties))
+                    .childHandler(initializer());
+            this.domainChannel = bootstrap.bind(new DomainSocketAddress(domainSocket)).sync().channel();
+            LocalServer.setDomainSocket(domainSocket);
+            logger.info("服务端 domain socket 启动完成: {}", domainSocket);
+        } catch (Exception e) {
+            logger.warn("服务端 domain socket 启动失败: {}", domainSocket, e);
+            if (!shared) {
+                bossGroup.shutdownGracefully();
+                workerGroup.shutdownGracefully();
+            }
+            return;
+        }
+        if (!shared) {
+            this.domainChannel.closeFuture().addListener(future -> {
+                bossGroup.shutdownGracefully();
+                workerGroup.shutdownGracefully();
+            });
         }
     }
 
+    private ChannelInitializer<Channel> initializer() {
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel channel) throws Exception {
+                TransportFactory.coalescing(channel.pipeline(), properties);
+                //给pipeline管道设置处理器
+                channel.pipeline().addLast(
+                        new Encoder(),
+                        new Decoder(properties.getMaxFrameLength(), serializers)
+                );
+                TransportFactory.heartbeat(channel.pipeline(), properties, false);
+                channel.pipeline().addLast(new ServerHanlder(dispatcher, serializers));
+            }
+        };
+    }
+
+    public void close() {
+        if (null != domainChannel) {
+            domainChannel.close();
+        }
+        acceptors.forEach(Channel::close);
+        if (null != channelFuture) {
+            channelFuture.channel().close();
+        }
+    }
+
+    /**
+     * 监听的端口，配置为 0 时启动之后返回系统分配的端口
+     */
+    public int getPort() {
+        return port;
+    }
+
     public ChannelFuture getChannelFuture() {
         return channelFuture;
     }
@@ -99,12 +229,9 @@ public class ServerSocket implements Runnable {
     }
 
     public static void main(String[] args) throws InterruptedException {
-        ServerSocket serverSocket = new ServerSocket(null, 6666);
-        Thread thread = new Thread(serverSocket);
-        thread.start();
-        while (!serverSocket.isReady()) {
-            Thread.sleep(500);
-        }
+        ServerSocket serverSocket = new ServerSocket(6666, ServerDispatcher.create(new ServerProperties()));
+        serverSocket.start();
         System.out.println("server 启动完成");
+        serverSocket.getChannelFuture().channel().closeFuture().sync();
     }
 }
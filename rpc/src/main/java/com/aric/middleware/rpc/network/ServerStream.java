@@ -0,0 +1,246 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.BaseStream;
+
+/**
+ * 服务端的一个流式调用，按客户端授予的额度发送结果
+ * 1. 服务方法返回 Iterator、Iterable、Stream 时，额度用完就释放派发线程，收到新的额度后再派发继续读取
+ * 2. 服务方法返回 Flow.Publisher 时，额度直接转换为对 Publisher 的 request(n)
+ * 额度之外的结果不会被读取，服务端的内存占用和结果总量无关
+ */
+public class ServerStream {
+    private static final Logger logger = LoggerFactory.getLogger(ServerStream.class);
+
+    // 一个 STREAM_CHUNK 帧最多携带的条数
+    private static final int MAX_CHUNK = 64;
+
+    private final ChannelHandlerContext ctx;
+    private final int requestId;
+    private final byte serializer;
+    private final ServerDispatcher dispatcher;
+    private final Runnable onFinish;
+
+    private final AtomicLong credit = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private volatile Iterator<?> iterator;
+    private volatile AutoCloseable resource;
+    private volatile Flow.Subscription subscription;
+
+    /**
+     * @param onFinish 结束（完成、出错、取消）时调用一次，用于从连接的流表中移除
+     */
+    public ServerStream(ChannelHandlerContext ctx, int requestId, byte serializer, ServerDispatcher dispatcher, Runnable onFinish) {
+        this.ctx = ctx;
+        this.requestId = requestId;
+        this.serializer = serializer;
+        this.dispatcher = dispatcher;
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * 服务方法返回后调用，在派发线程上执行
+     */
+    public void start(Object result) {
+        if (result instanceof Flow.Publisher) {
+            ((Flow.Publisher<?>) result).subscribe(new StreamSubscriber());
+            return;
+        }
+
+        if (result instanceof BaseStream) {
+            BaseStream<?, ?> stream = (BaseStream<?, ?>) result;
+            this.resource = stream;
+            this.iterator = stream.iterator();
+        } else if (result instanceof Iterator) {
+            this.iterator = (Iterator<?>) result;
+        } else if (result instanceof Iterable) {
+            this.iterator = ((Iterable<?>) result).iterator();
+        } else if (null == result) {
+            this.iterator = Collections.emptyIterator();
+        } else {
+            // 非流式的返回值作为只有一条结果的流
+            this.iterator = Collections.singletonList(result).iterator();
+        }
+        if (this.iterator instanceof AutoCloseable && null == this.resource) {
+            this.resource = (AutoCloseable) this.iterator;
+        }
+        // 服务方法执行期间已经被取消
+        if (done.get()) {
+            closeResource();
+            return;
+        }
+        if (wip.getAndIncrement() == 0) {
+            drain();
+        }
+    }
+
+    /**
+     * 收到 STREAM_CREDIT 帧，在 IO 线程上执行
+     */
+    public void addCredit(int n) {
+        if (n <= 0 || done.get()) {
+            return;
+        }
+        Flow.Subscription subscription = this.subscription;
+        if (null != subscription) {
+            subscription.request(n);
+            return;
+        }
+        credit.addAndGet(n);
+        // onSubscribe 可能在加额度的同时发生，再检查一次，避免额度滞留
+        subscription = this.subscription;
+        if (null != subscription) {
+            long pending = credit.getAndSet(0);
+            if (pending > 0) {
+                subscription.request(pending);
+            }
+            return;
+        }
+        if (null != iterator && wip.getAndIncrement() == 0) {
+            dispatcher.dispatch(this::drain, () -> end(RpcErrorCode.SERVER_BUSY.getMessage()));
+        }
+    }
+
+    /**
+     * 客户端取消或者连接断开
+     */
+    public void cancel() {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        Flow.Subscription subscription = this.subscription;
+        if (null != subscription) {
+            subscription.cancel();
+        }
+        release();
+    }
+
+    /**
+     * 服务方法本身抛出异常
+     */
+    public void fail(String error) {
+        end(error);
+    }
+
+    /**
+     * 在额度内尽量多地发送，额度用完时退出；执行期间到达的额度由 wip 计数保证不会丢失
+     */
+    private void drain() {
+        int missed = 1;
+        for (; ; ) {
+            Iterator<?> iterator = this.iterator;
+            while (!done.get() && null != iterator) {
+                long available = credit.get();
+                if (available <= 0) {
+                    break;
+                }
+                int n = (int) Math.min(available, MAX_CHUNK);
+                List<Object> items = new ArrayList<>(n);
+                boolean hasMore = true;
+                try {
+                    while (items.size() < n && (hasMore = iterator.hasNext())) {
+                        items.add(iterator.next());
+                    }
+                    // 额度正好在最后一条结果处用完时，随这一批立即结束，不用等待客户端的下一次额度
+                    if (hasMore) {
+                        hasMore = iterator.hasNext();
+                    }
+                } catch (Throwable e) {
+                    logger.error("server 读取流式结果异常: {}", requestId, e);
+                    sendChunk(items);
+                    end(e.toString());
+                    return;
+                }
+                credit.addAndGet(-items.size());
+                sendChunk(items);
+                if (!hasMore) {
+                    end(null);
+                    return;
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void sendChunk(List<Object> items) {
+        if (items.isEmpty() || done.get()) {
+            return;
+        }
+        StreamFrame frame = new StreamFrame(Protocol.TYPE_STREAM_CHUNK, requestId, serializer);
+        frame.setItems(items.toArray());
+        ctx.writeAndFlush(frame);
+    }
+
+    private void end(String error) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        StreamFrame frame = new StreamFrame(Protocol.TYPE_STREAM_END, requestId, serializer);
+        frame.setError(error);
+        ctx.writeAndFlush(frame);
+        release();
+    }
+
+    private void release() {
+        closeResource();
+        onFinish.run();
+    }
+
+    private void closeResource() {
+        AutoCloseable resource = this.resource;
+        if (null != resource) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                logger.warn("关闭流式结果失败: {}", requestId, e);
+            }
+        }
+    }
+
+    private class StreamSubscriber implements Flow.Subscriber<Object> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (done.get()) {
+                subscription.cancel();
+                return;
+            }
+            ServerStream.this.subscription = subscription;
+            long pending = credit.getAndSet(0);
+            if (pending > 0) {
+                subscription.request(pending);
+            }
+        }
+
+        @Override
+        public void onNext(Object item) {
+            sendChunk(Collections.singletonList(item));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            end(throwable.toString());
+        }
+
+        @Override
+        public void onComplete() {
+            end(null);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.aric.middleware.rpc.network;
+
+/**
+ * 流式调用的帧：STREAM_CHUNK 携带一批结果，STREAM_END 携带结束时的错误信息（正常结束时为空），
+ * STREAM_CREDIT 的额度和 STREAM_CANCEL 只使用帧头
+ * 类型、请求 id、序列化编号和额度放在帧头中，不参与序列化
+ */
+public class StreamFrame {
+    private transient byte type;
+    private transient int requestId;
+    private transient byte serializer;
+    private transient int credit; // STREAM_CREDIT 授予的条数，放在帧头的 methodId 字段
+    private Object[] items;
+    private String error;
+
+    public StreamFrame() {
+    }
+
+    public StreamFrame(byte type, int requestId, byte serializer) {
+        this.type = type;
+        this.requestId = requestId;
+        this.serializer = serializer;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public void setType(byte type) {
+        this.type = type;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
+    public int getCredit() {
+        return credit;
+    }
+
+    public void setCredit(int credit) {
+        this.credit = credit;
+    }
+
+    public Object[] getItems() {
+        return items;
+    }
+
+    public void setItems(Object[] items) {
+        this.items = items;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
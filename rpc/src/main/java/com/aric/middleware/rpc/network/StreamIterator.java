@@ -0,0 +1,131 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 以阻塞迭代器的方式消费流式调用
+ * 先授予 window 条额度，调用方每取走一半再补充，队列中最多缓存 window 条结果
+ */
+public class StreamIterator extends ClientStream implements Iterator<Object>, AutoCloseable {
+    public static final int DEFAULT_WINDOW = 128;
+
+    private static final Object NULL = new Object();
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final int window;
+    private final long timeoutMillis;
+
+    private int consumed;
+    private Object next;
+    private boolean finished;
+
+    /**
+     * @param timeoutMillis 等待下一条结果的最长时间
+     */
+    public StreamIterator(int window, long timeoutMillis) {
+        this.window = Math.max(2, window);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    protected void onOpen() {
+        sendCredit(window);
+    }
+
+    @Override
+    protected void onChunk(Object[] items) {
+        for (Object item : items) {
+            queue.offer(null == item ? NULL : item);
+        }
+    }
+
+    @Override
+    protected void onEnd(String error) {
+        queue.offer(null == error ? END : new RpcException(RpcErrorCode.SERVER_ERROR, error));
+    }
+
+    @Override
+    protected void onFail(Throwable cause) {
+        queue.offer(cause instanceof RpcException ? cause : new RpcException(cause));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null != next) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+
+        Object item;
+        try {
+            item = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RpcException(e);
+        }
+        if (null == item) {
+            close();
+            throw new RpcException(RpcErrorCode.TIMEOUT_ERROR, "等待流式结果 " + timeoutMillis + "ms");
+        }
+        if (END == item) {
+            finished = true;
+            return false;
+        }
+        if (item instanceof RpcException) {
+            finished = true;
+            throw (RpcException) item;
+        }
+
+        next = item;
+        // 取走一半窗口后补充额度，服务端不会因为等待额度而停顿
+        if (++consumed >= window / 2) {
+            sendCredit(consumed);
+            consumed = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        return NULL == item ? null : item;
+    }
+
+    /**
+     * 没有读完就关闭时通知服务端停止发送
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        next = null;
+        queue.clear();
+        sendCancel();
+    }
+
+    public Stream<Object> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+}
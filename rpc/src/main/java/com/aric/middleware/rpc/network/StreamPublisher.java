@@ -0,0 +1,135 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 以 Flow.Publisher 的方式消费流式调用，订阅时才发出请求，只能订阅一次
+ * 订阅方的 request(n) 直接作为额度授予服务端，结果在 IO 线程上回调 onNext
+ */
+public class StreamPublisher extends ClientStream implements Flow.Publisher<Object> {
+    private final Consumer<ClientStream> opener;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private volatile Flow.Subscriber<Object> subscriber;
+    private volatile boolean opened;
+    private long pendingDemand;
+
+    /**
+     * @param opener 发出请求并把这个流绑定到连接上
+     */
+    public StreamPublisher(Consumer<ClientStream> opener) {
+        this.opener = opener;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("流式调用只能订阅一次"));
+            return;
+        }
+        this.subscriber = (Flow.Subscriber<Object>) subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                StreamPublisher.this.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                if (terminated.compareAndSet(false, true) && opened) {
+                    sendCancel();
+                }
+            }
+        });
+        if (terminated.get()) {
+            return;
+        }
+        try {
+            opener.accept(this);
+        } catch (Exception e) {
+            onFail(e);
+        }
+    }
+
+    private void request(long n) {
+        if (terminated.get()) {
+            return;
+        }
+        if (n <= 0) {
+            onFail(new IllegalArgumentException("request 的数量必须大于 0: " + n));
+            return;
+        }
+        // 连接建立之前的请求先累计，onOpen 时一起授予
+        synchronized (this) {
+            if (!opened) {
+                pendingDemand = Math.min(Integer.MAX_VALUE, pendingDemand + n);
+                return;
+            }
+        }
+        sendCredit((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    @Override
+    protected void onOpen() {
+        long demand;
+        synchronized (this) {
+            opened = true;
+            demand = pendingDemand;
+            pendingDemand = 0;
+        }
+        if (terminated.get()) {
+            sendCancel();
+        } else if (demand > 0) {
+            sendCredit((int) demand);
+        }
+    }
+
+    @Override
+    protected void onChunk(Object[] items) {
+        for (Object item : items) {
+            if (terminated.get()) {
+                return;
+            }
+            subscriber.onNext(item);
+        }
+    }
+
+    @Override
+    protected void onEnd(String error) {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        if (null == error) {
+            subscriber.onComplete();
+        } else {
+            subscriber.onError(new RpcException(RpcErrorCode.SERVER_ERROR, error));
+        }
+    }
+
+    @Override
+    protected void onFail(Throwable cause) {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        if (opened) {
+            sendCancel();
+        }
+        subscriber.onError(cause instanceof RpcException ? cause : new RpcException(cause));
+    }
+}
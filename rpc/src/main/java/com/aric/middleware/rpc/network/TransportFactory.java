@@ -0,0 +1,160 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.config.ServerProperties;
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据 ServerProperties 创建服务端和客户端的线程组、通道类型和内存池
+ * transport=epoll 并且当前系统支持时使用 Netty 的 epoll 实现，否则使用 nio
+ * 服务端和客户端的 pipeline 按 writeCoalescing 配置合并 flush，按 heartbeatInterval 配置心跳和空闲检测
+ */
+public class TransportFactory {
+    private static final Logger logger = LoggerFactory.getLogger(TransportFactory.class);
+
+    public static final String TRANSPORT_NIO = "nio";
+    public static final String TRANSPORT_EPOLL = "epoll";
+
+    public static final String COALESCING_NONE = "none";
+    public static final String COALESCING_CONSOLIDATE = "consolidate";
+    public static final String COALESCING_BATCH = "batch";
+
+    // 参数相同的内存池只创建一个，服务端和客户端共用
+    private static final Map<String, ByteBufAllocator> allocators = new ConcurrentHashMap<>();
+
+    /**
+     * 配置了 epoll 但是当前系统不支持时退回 nio
+     */
+    public static boolean useEpoll(ServerProperties properties) {
+        if (!TRANSPORT_EPOLL.equalsIgnoreCase(properties.getTransport())) {
+            return false;
+        }
+        if (!Epoll.isAvailable()) {
+            logger.warn("当前系统不支持 epoll, 使用 nio: {}", Epoll.unavailabilityCause().toString());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param threads 线程数，0 表示使用 Netty 默认值
+     */
+    public static EventLoopGroup newGroup(boolean epoll, int threads) {
+        return epoll ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public static Class<? extends ServerChannel> serverChannel(boolean epoll) {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends SocketChannel> channel(boolean epoll) {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 服务端接受的 TCP 连接和客户端发起的 TCP 连接使用同样的参数
+     */
+    public static void childOptions(ServerBootstrap bootstrap, ServerProperties properties) {
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, properties.isTcpNoDelay())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(properties))
+                .childOption(ChannelOption.ALLOCATOR, allocator(properties));
+    }
+
+    public static void options(AbstractBootstrap<?, ?> bootstrap, ServerProperties properties) {
+        bootstrap.option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, properties.isTcpNoDelay())
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark(properties))
+                .option(ChannelOption.ALLOCATOR, allocator(properties));
+    }
+
+    public static WriteBufferWaterMark waterMark(ServerProperties properties) {
+        int low = Math.max(0, properties.getWriteBufferLowWaterMark());
+        return new WriteBufferWaterMark(low, Math.max(low, properties.getWriteBufferHighWaterMark()));
+    }
+
+    public static ByteBufAllocator allocator(ServerProperties properties) {
+        boolean preferDirect = properties.isAllocatorPreferDirect();
+        int arenas = properties.getAllocatorArenas();
+        int maxOrder = properties.getAllocatorMaxOrder();
+        // 没有调整时使用 Netty 的默认配置，仍然可以通过 io.netty.allocator.* 系统属性调整
+        if (preferDirect && arenas <= 0 && maxOrder <= 0) {
+            return ByteBufAllocator.DEFAULT;
+        }
+        return allocators.computeIfAbsent(preferDirect + ":" + arenas + ":" + maxOrder, key -> new PooledByteBufAllocator(
+                preferDirect,
+                arenas > 0 ? arenas : PooledByteBufAllocator.defaultNumHeapArena(),
+                arenas > 0 ? arenas : PooledByteBufAllocator.defaultNumDirectArena(),
+                PooledByteBufAllocator.defaultPageSize(),
+                maxOrder > 0 ? maxOrder : PooledByteBufAllocator.defaultMaxOrder(),
+                PooledByteBufAllocator.defaultTinyCacheSize(),
+                PooledByteBufAllocator.defaultSmallCacheSize(),
+                PooledByteBufAllocator.defaultNormalCacheSize(),
+                PooledByteBufAllocator.defaultUseCacheForAllThreads()));
+    }
+
+    /**
+     * 在 pipeline 的最前面（靠近网络的一侧）加上合并 flush 的处理器，需要在其他处理器之前调用
+     * consolidate: 读事件触发的多次 flush 在本轮读完成时合并为一次，业务线程提交的写出合并到事件循环的下一轮一起 flush
+     * batch: 攒到 writeCoalescingBytes 字节或者等待 writeCoalescingDelayMicros 后再 flush
+     */
+    public static void coalescing(ChannelPipeline pipeline, ServerProperties properties) {
+        String mode = properties.getWriteCoalescing();
+        if (null == mode || COALESCING_NONE.equalsIgnoreCase(mode)) {
+            return;
+        }
+        if (COALESCING_CONSOLIDATE.equalsIgnoreCase(mode)) {
+            pipeline.addLast(new FlushConsolidationHandler(256, true));
+        } else if (COALESCING_BATCH.equalsIgnoreCase(mode)) {
+            pipeline.addLast(new WriteCoalescingHandler(properties.getWriteCoalescingBytes(), properties.getWriteCoalescingDelayMicros()));
+        } else {
+            throw new IllegalArgumentException("不支持的 writeCoalescing: " + mode);
+        }
+    }
+
+    /**
+     * 在解码器之后加上空闲检测和心跳处理，需要在业务处理器之前调用
+     * 客户端每 heartbeatInterval 没有读到数据就发送心跳，两端超过 heartbeatTimeout 没有读到数据时关闭连接
+     * 客户端按读空闲而不是写空闲发送心跳：一直在发请求、但服务端迟迟没有响应的连接也要靠心跳证明对端还活着
+     */
+    public static void heartbeat(ChannelPipeline pipeline, ServerProperties properties, boolean client) {
+        int interval = properties.getHeartbeatInterval();
+        if (interval <= 0) {
+            // 本端关闭了心跳时仍然要回复对端的 PING
+            pipeline.addLast(new HeartbeatHandler());
+            return;
+        }
+        // 至少要能容忍丢失一次心跳
+        long timeout = Math.max(properties.getHeartbeatTimeout(), 2L * interval);
+        if (client) {
+            pipeline.addLast(new IdleStateHandler(interval, 0, 0, TimeUnit.MILLISECONDS));
+            pipeline.addLast(new HeartbeatHandler((int) ((timeout + interval - 1) / interval)));
+        } else {
+            pipeline.addLast(new IdleStateHandler(timeout, 0, 0, TimeUnit.MILLISECONDS));
+            pipeline.addLast(new HeartbeatHandler());
+        }
+    }
+}
@@ -1,48 +1,52 @@
 package com.aric.middleware.rpc.network;
 
-import java.util.concurrent.*;
+import io.netty.util.Timeout;
 
-public class WriteFuture implements Future<Response> {
-    private final CountDownLatch countDownLatch = new CountDownLatch(1);
-    private Response response;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * 在途请求的结果，在 ClientHandler 收到响应时（Netty 的 IO 线程上）完成
+ * 同步调用直接 get() 等待，异步调用则返回给调用方自行组合
+ */
+public class WriteFuture extends CompletableFuture<Response> {
+    private final int requestId;
+    // 时间轮中的超时任务，请求完成后需要取消
+    private volatile Timeout timeout;
 
-    @Override
-    public boolean cancel(boolean mayInterruptIfRunning) {
-        return false;
+    public WriteFuture(int requestId) {
+        this.requestId = requestId;
     }
 
-    @Override
-    public boolean isCancelled() {
-        return false;
-    }
-
-    @Override
-    public boolean isDone() {
-        return false;
-    }
-
-    public Response getResponse() {
-        return response;
+    public int getRequestId() {
+        return requestId;
     }
 
     public void setResponse(Response response) {
-        countDownLatch.countDown();
-        this.response = response;
+        if (null != response.getError()) {
+            setException(response.toException());
+            return;
+        }
+        complete(response);
+        cancelTimeout();
     }
 
-    @Override
-    public Response get() throws InterruptedException, ExecutionException {
-        countDownLatch.await();
-        return this.response;
+    public void setException(Throwable cause) {
+        completeExceptionally(cause);
+        cancelTimeout();
     }
 
-    @Override
-    public Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        if (countDownLatch.await(timeout, unit)) {
-            return this.response;
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+        // 响应可能在超时任务登记之前就已经到达
+        if (isDone()) {
+            timeout.cancel();
         }
+    }
 
-        return null;
+    private void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
     }
 }
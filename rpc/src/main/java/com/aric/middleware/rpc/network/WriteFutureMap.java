@@ -1,21 +1,89 @@
 package com.aric.middleware.rpc.network;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每条连接上在途请求的登记表，请求 id 由连接内自增的序号生成
+ * 超时由所有连接共享的时间轮驱动：请求超时后立即从表中移除并以异常结束，不会再残留在表中
+ */
 public class WriteFutureMap {
-    private static final Map<String, WriteFuture> syncMap = new HashMap<>();
+    // 时间轮每 10ms 走一格，一圈 512 格
+    private static final HashedWheelTimer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
 
-    public static WriteFuture getWriteFuture(String uid) {
-        if (syncMap.containsKey(uid)) {
-            return syncMap.get(uid);
-        }
-        WriteFuture writeFuture = new WriteFuture();
-        syncMap.put(uid, writeFuture);
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ConcurrentMap<Integer, WriteFuture> syncMap = new ConcurrentHashMap<>();
+
+    /**
+     * 登记一个新的在途请求，并在时间轮上挂上超时任务
+     */
+    public WriteFuture newWriteFuture(long timeoutMillis) {
+        int requestId = sequence.incrementAndGet();
+        WriteFuture writeFuture = new WriteFuture(requestId);
+        syncMap.put(requestId, writeFuture);
+        writeFuture.setTimeout(timer.newTimeout(t -> expire(requestId, timeoutMillis), timeoutMillis, TimeUnit.MILLISECONDS));
         return writeFuture;
     }
 
-    public static void removeWriteFuture(String uid) {
-        syncMap.remove(uid);
+    /**
+     * 在共享的时间轮上执行延时任务，任务在时间轮的线程上执行，不能阻塞
+     */
+    public static Timeout schedule(Runnable task, long delayMillis) {
+        return timer.newTimeout(t -> task.run(), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 分配一个不登记在表中的请求 id，流式调用使用，和普通请求共用序号
+     */
+    public int nextRequestId() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * 收到响应时调用，返回 false 表示请求已经超时被移除
+     */
+    public boolean complete(Response response) {
+        WriteFuture writeFuture = syncMap.remove(response.getRequestId());
+        if (null == writeFuture) {
+            return false;
+        }
+        writeFuture.setResponse(response);
+        return true;
+    }
+
+    /**
+     * 请求发送失败时调用
+     */
+    public void fail(int requestId, Throwable cause) {
+        WriteFuture writeFuture = syncMap.remove(requestId);
+        if (null != writeFuture) {
+            writeFuture.setException(cause);
+        }
+    }
+
+    /**
+     * 连接断开时调用，所有在途请求立即以异常结束，不再等待超时
+     */
+    public void failAll(Throwable cause) {
+        for (Integer requestId : syncMap.keySet()) {
+            fail(requestId, cause);
+        }
+    }
+
+    public int size() {
+        return syncMap.size();
+    }
+
+    private void expire(int requestId, long timeoutMillis) {
+        fail(requestId, new RpcException(RpcErrorCode.TIMEOUT_ERROR, timeoutMillis + "ms"));
     }
 }
@@ -1,55 +1,418 @@
 package com.aric.middleware.rpc.proxy;
 
-import com.alibaba.fastjson.JSON;
+import com.aric.middleware.rpc.annotation.RpcMethod;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.config.LocalServer;
 import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.loadbalance.LoadBalance;
+import com.aric.middleware.rpc.loadbalance.LoadBalanceFactory;
+import com.aric.middleware.rpc.loadbalance.ProviderStats;
 import com.aric.middleware.rpc.network.ClientSocket;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
 import com.aric.middleware.rpc.network.Request;
 import com.aric.middleware.rpc.network.Response;
+import com.aric.middleware.rpc.network.WriteFutureMap;
+import com.aric.middleware.rpc.serialize.Serializer;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class ConsumerBeanProxy implements InvocationHandler {
     private final Logger logger = LoggerFactory.getLogger(ConsumerBeanProxy.class);
 
-    private final Request request;
+    private final String nozzle;
+    private final Supplier<List<ProviderConfig>> providers;
+    private final Serializer serializer;
+    private final LoadBalance loadBalance;
+    private final int timeout;
+    private final String local;
 
-    private ClientSocket clientSocket;
+    // 方法签名和 @RpcMethod 的配置只需要解析一次
+    private final Map<Method, MethodMeta> metas = new ConcurrentHashMap<>();
 
-    public ConsumerBeanProxy(Request request) {
-        this.request = request;
+    public ConsumerBeanProxy(ProviderConfig providerConfig) {
+        this(providerConfig.getNozzle(), () -> Collections.singletonList(providerConfig), SerializerFactory.getDefault(), LoadBalanceFactory.create(null));
     }
 
-    public ClientSocket getClient() throws InterruptedException {
-        if (null != this.clientSocket) {
-            return this.clientSocket;
+    /**
+     * @param providers 服务提供方列表，每次调用时获取，注册中心的变更可以立即生效
+     */
+    public ConsumerBeanProxy(String nozzle, Supplier<List<ProviderConfig>> providers, Serializer serializer, LoadBalance loadBalance) {
+        this(nozzle, providers, serializer, loadBalance, 0);
+    }
+
+    /**
+     * @param timeout 调用超时时间（毫秒），0 表示使用默认的 3000ms
+     */
+    public ConsumerBeanProxy(String nozzle, Supplier<List<ProviderConfig>> providers, Serializer serializer, LoadBalance loadBalance, int timeout) {
+        this(nozzle, providers, serializer, loadBalance, timeout, null);
+    }
+
+    /**
+     * @param local 服务提供方就在当前 JVM 中时的调用方式：direct（默认，直接传递引用）、copy（参数和结果经过一次序列化复制）、none（总是走网络）
+     */
+    public ConsumerBeanProxy(String nozzle, Supplier<List<ProviderConfig>> providers, Serializer serializer, LoadBalance loadBalance, int timeout, String local) {
+        this.local = LocalInvoker.mode(local);
+        this.timeout = timeout > 0 ? timeout : ClientSocket.DEFAULT_TIMEOUT;
+        this.nozzle = nozzle;
+        this.providers = providers;
+        this.serializer = serializer;
+        this.loadBalance = loadBalance;
+        // 返回值的类型通常和接口定义在同一个包中
+        SerializerFactory.allowPackageOf(nozzle);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        // 每次调用都会经过这里，只在 DEBUG 级别输出
+        if (logger.isDebugEnabled()) {
+            logger.debug("调用代理类方法: {}", method.getName());
+        }
+        MethodMeta meta = metas.computeIfAbsent(method, this::meta);
+        String signature = meta.signature;
+        // 在服务方法中发起的调用继承调用链剩余的时间，已经超时则直接失败
+        int timeout = RpcContext.getContext().remaining(meta.timeout);
+        // 每次调用都重新选择服务提供方
+        List<ProviderConfig> candidates = providers.get();
+        if (candidates.isEmpty()) {
+            throw new RpcException(RpcErrorCode.NO_PROVIDER, nozzle);
+        }
+
+        Class<?> returnType = method.getReturnType();
+        RpcBatch batch = RpcBatch.current();
+        boolean stream = Iterator.class == returnType || Stream.class == returnType || Flow.Publisher.class == returnType;
+        if (null != batch || stream) {
+            ProviderConfig provider = loadBalance.select(candidates);
+            // 从共享的连接池中获取连接，同一个服务端的所有代理类共用连接
+            ClientSocket client = ClientTransport.getClient(provider);
+            Request request = newRequest(client, signature, args, timeout);
+            if (logger.isDebugEnabled()) {
+                logger.debug("向服务端 {}:{} 发送消息：{}", provider.getHost(), provider.getPort(), signature);
+            }
+
+            // 在 RpcBatch 中发起的调用只记录下来，由 execute 合并发送，方法本身返回默认值
+            if (null != batch) {
+                if (stream || CompletionStage.class.isAssignableFrom(returnType)) {
+                    throw new IllegalStateException("批量调用不支持流式和异步返回的方法: " + signature);
+                }
+                batch.add(provider, client, request);
+                return defaultValue(returnType);
+            }
+
+            // 流式调用：返回 Iterator、Stream 或者 Flow.Publisher 的方法，结果按消费进度分批拉取
+            if (Iterator.class == returnType) {
+                return client.openStream(request);
+            }
+            if (Stream.class == returnType) {
+                return client.openStream(request).stream();
+            }
+            return client.openPublisher(request);
+        }
+
+        // 服务提供方就在当前 JVM 中时直接调用，不经过编解码和网络
+        MethodDictionary.Entry entry = local(meta, candidates);
+        RpcContext context = RpcContext.getContext();
+        CompletableFuture<Response> future;
+        boolean async;
+        if (null != entry) {
+            // 先取走 asyncCall 的标记，服务方法中再发起的调用按同步执行
+            async = context.takeAsync();
+            future = LocalInvoker.invoke(entry, args, timeout, LocalInvoker.MODE_COPY.equals(local) ? serializer : null);
+        } else {
+            // 开启重试的方法失败后换一个服务提供方重试
+            future = null == meta.retry
+                    ? attempt(meta, candidates, null, args, timeout)
+                    : retry(meta, new HashSet<>(), args, context.getDeadline(), 1);
+            async = context.takeAsync();
+        }
+
+        // 接口方法的返回值是 CompletableFuture 或 CompletionStage，直接返回，不阻塞调用线程
+        // 不能用 returnType.isAssignableFrom，返回值声明为 Object、Future 的同步方法也会匹配
+        if (CompletableFuture.class == returnType || CompletionStage.class == returnType) {
+            return future.thenApply(Response::getResult);
         }
-        ProviderConfig providerConfig = request.getProviderConfig();
 
-        ClientSocket clientSocket = new ClientSocket(providerConfig.getHost(), providerConfig.getPort());
-        this.clientSocket = clientSocket;
-        new Thread(clientSocket).start();
-        while (!clientSocket.isReady()) {
-            Thread.sleep(500);
+        // 在 RpcContext.asyncCall 中发起的调用，future 放到上下文中，方法本身返回默认值
+        if (async) {
+            context.setFuture(future.thenApply(Response::getResult));
+            return defaultValue(returnType);
         }
-        logger.info("代理类 client 启动完成");
 
-        return this.clientSocket;
+        return ClientSocket.await(future).getResult();
     }
 
+    /**
+     * 请求 id 由连接分配，方法 id 由连接对应的服务端分配，所以每次调用都需要一个新的请求对象
+     */
+    private Request newRequest(ClientSocket client, String signature, Object[] args, int timeout) throws InterruptedException {
+        // 服务端不支持配置的序列化方式时退回默认的 protostuff
+        byte serializerId = client.supportsSerializer(serializer.getId()) ? serializer.getId() : SerializerFactory.getDefault().getId();
+        return new Request(client.getMethodId(signature), serializerId, timeout, args);
+    }
 
-    @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        logger.info("调用代理类方法: {}", method.getName());
-        ClientSocket client = getClient();
-        request.setMethodName(method.getName());
-        request.setParameterTypes(method.getParameterTypes());
-        request.setArgs(args);
-        logger.info("向服务端发送消息：{}", JSON.toJSONString(request));
-        Response response = client.writeMessage(request);
-
-        return response.getResult();
+    /**
+     * 选择一个服务提供方发出一次调用，开启对冲时可能向两个服务提供方各发一次
+     *
+     * @param tried 已经调用过的服务提供方，优先选择其他的，为 null 时不记录
+     */
+    private CompletableFuture<Response> attempt(MethodMeta meta, List<ProviderConfig> candidates, Set<ProviderConfig> tried,
+                                                Object[] args, int timeout) throws InterruptedException {
+        List<ProviderConfig> choices = candidates;
+        if (null != tried && !tried.isEmpty()) {
+            choices = new ArrayList<>(candidates);
+            choices.removeAll(tried);
+            // 所有服务提供方都调用过时，重新从全部中选择
+            if (choices.isEmpty()) {
+                choices = candidates;
+            }
+        }
+        ProviderConfig provider = loadBalance.select(choices);
+        if (null != tried) {
+            tried.add(provider);
+        }
+        // 从共享的连接池中获取连接，同一个服务端的所有代理类共用连接
+        ClientSocket client = ClientTransport.getClient(provider);
+        Request request = newRequest(client, meta.signature, args, timeout);
+        if (logger.isDebugEnabled()) {
+            logger.debug("向服务端 {}:{} 发送消息：{}", provider.getHost(), provider.getPort(), meta.signature);
+        }
+
+        CompletableFuture<Response> future = send(provider, client, request);
+        // 幂等的方法在一定时间内没有响应时，向另一个服务提供方再发一次
+        if (null != meta.hedge && candidates.size() > 1) {
+            future = hedge(meta, candidates, provider, future, args, timeout);
+        }
+        return future;
+    }
+
+    /**
+     * 发出第 attempt 次调用，失败并且重试策略允许时，退避一段时间后换一个服务提供方重试
+     * 每次调用都使用方法配置的超时时间，但不会超过调用链的截止时间
+     *
+     * @param deadline 调用链的截止时间，0 表示没有限制
+     */
+    private CompletableFuture<Response> retry(MethodMeta meta, Set<ProviderConfig> tried, Object[] args, long deadline, int attempt) {
+        RetryPolicy policy = meta.retry;
+        CompletableFuture<Response> future;
+        try {
+            List<ProviderConfig> candidates = providers.get();
+            if (candidates.isEmpty()) {
+                throw new RpcException(RpcErrorCode.NO_PROVIDER, nozzle);
+            }
+            int timeout = meta.timeout;
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new RpcException(RpcErrorCode.TIMEOUT_ERROR, "调用链已超过截止时间");
+                }
+                timeout = (int) Math.min(timeout, remaining);
+            }
+            future = attempt(meta, candidates, tried, args, timeout);
+        } catch (Throwable e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+            if (null == e) {
+                policy.onSuccess(attempt);
+                result.complete(response);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && null != e.getCause() ? e.getCause() : e;
+            if (!policy.shouldRetry(attempt, cause)) {
+                policy.onFailure();
+                result.completeExceptionally(cause);
+                return;
+            }
+            logger.warn("调用失败, 第 {} 次重试: {}, {}", attempt, meta.signature, cause.getMessage());
+            // 选择连接、握手可能阻塞，不能占用时间轮的线程
+            WriteFutureMap.schedule(() -> execute(() ->
+                    retry(meta, tried, args, deadline, attempt + 1).whenComplete((r, t) -> {
+                        if (null == t) {
+                            result.complete(r);
+                        } else {
+                            result.completeExceptionally(t);
+                        }
+                    }), result::completeExceptionally), policy.backoff(attempt));
+        });
+        return result;
+    }
+
+    private CompletableFuture<Response> send(ProviderConfig provider, ClientSocket client, Request request) {
+        // 记录在途请求数和响应耗时，供 leastactive、p2c 策略使用
+        ProviderStats stats = ProviderStats.get(provider);
+        long start = stats.begin();
+        CompletableFuture<Response> future = client.writeMessageAsync(request);
+        // 服务方法本身抛出的异常也是正常的响应，只有服务提供方自身的故障才按失败计入
+        future.whenComplete((response, e) -> stats.end(start, null == e || !RetryPolicy.isRetryable(e)));
+        return future;
+    }
+
+    /**
+     * 对冲：原请求在等待时间内没有响应、并且预算充足时，向另一个服务提供方发送同样的请求
+     * 取先成功返回的结果，所有请求都失败时才失败，后返回的结果直接丢弃
+     */
+    private CompletableFuture<Response> hedge(MethodMeta meta, List<ProviderConfig> candidates, ProviderConfig primary,
+                                              CompletableFuture<Response> first, Object[] args, int timeout) {
+        HedgePolicy policy = meta.hedge;
+        long start = System.nanoTime();
+        first.thenRun(() -> policy.record(System.nanoTime() - start));
+        long delay = policy.onCall();
+        if (delay < 0 || delay >= timeout) {
+            return first;
+        }
+
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        // 还没有结束的请求数，最后一个失败的请求决定结果
+        AtomicInteger attempts = new AtomicInteger(1);
+        first.whenComplete((response, e) -> {
+            if (null == e) {
+                result.complete(response);
+            } else if (attempts.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        WriteFutureMap.schedule(() -> {
+            if (result.isDone() || !policy.tryHedge()) {
+                return;
+            }
+            attempts.incrementAndGet();
+            // 选择连接、握手可能阻塞，不能占用时间轮的线程
+            execute(() -> {
+                try {
+                    List<ProviderConfig> others = new ArrayList<>(candidates);
+                    others.remove(primary);
+                    ProviderConfig backup = loadBalance.select(others);
+                    ClientSocket client = ClientTransport.getClient(backup);
+                    Request request = newRequest(client, meta.signature, args, (int) Math.max(1, timeout - delay));
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("对冲请求 {}:{}: {}", backup.getHost(), backup.getPort(), meta.signature);
+                    }
+                    send(backup, client, request).whenComplete((response, e) -> {
+                        if (null == e) {
+                            if (result.complete(response)) {
+                                policy.onHedgeWin();
+                            }
+                        } else if (attempts.decrementAndGet() == 0) {
+                            result.completeExceptionally(e);
+                        }
+                    });
+                } catch (Throwable e) {
+                    if (attempts.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            }, e -> {
+                if (attempts.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }, delay);
+        return result;
+    }
+
+    /**
+     * 在客户端的有界线程池中执行重试、对冲任务，线程池已满时以 CLIENT_BUSY 通知调用方
+     */
+    private static void execute(Runnable task, Consumer<RpcException> onRejected) {
+        try {
+            ClientTransport.getExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            onRejected.accept(new RpcException(RpcErrorCode.CLIENT_BUSY, "重试、对冲线程池已满"));
+        }
+    }
+
+    /**
+     * 服务提供方列表中有当前 JVM 启动的服务端、并且该方法已经在当前 JVM 中暴露时，返回方法的调用器
+     * 批量和流式调用依赖连接上的帧和流控，仍然走网络
+     */
+    private MethodDictionary.Entry local(MethodMeta meta, List<ProviderConfig> candidates) {
+        if (LocalInvoker.MODE_NONE.equals(local)) {
+            return null;
+        }
+        for (ProviderConfig provider : candidates) {
+            if (LocalServer.isLocal(provider)) {
+                MethodDictionary.Entry entry = meta.local;
+                if (null == entry) {
+                    // 暴露的方法不会被删除，找到之后就可以一直使用
+                    entry = MethodDictionary.get(meta.signature);
+                    meta.local = entry;
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private MethodMeta meta(Method method) {
+        RpcMethod rpcMethod = method.getAnnotation(RpcMethod.class);
+        MethodMeta meta = new MethodMeta();
+        meta.signature = MethodDictionary.signature(nozzle, method);
+        // @RpcMethod 优先于消费者的配置
+        meta.timeout = null != rpcMethod && rpcMethod.timeout() > 0 ? rpcMethod.timeout() : timeout;
+        if (null != rpcMethod && rpcMethod.hedge()) {
+            meta.hedge = new HedgePolicy(rpcMethod.hedgePercentile(), rpcMethod.hedgeBudget());
+        }
+        if (null != rpcMethod && rpcMethod.retries() > 0) {
+            meta.retry = new RetryPolicy(rpcMethod.retries(), rpcMethod.retryBudget(), rpcMethod.retryBackoff());
+        }
+        return meta;
+    }
+
+    /**
+     * 获取代理方法的对冲策略，没有开启对冲时返回 null
+     */
+    public HedgePolicy getHedgePolicy(Method method) {
+        return metas.computeIfAbsent(method, this::meta).hedge;
+    }
+
+    /**
+     * 获取代理方法的重试策略，没有开启重试时返回 null
+     */
+    public RetryPolicy getRetryPolicy(Method method) {
+        return metas.computeIfAbsent(method, this::meta).retry;
+    }
+
+    private Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || void.class == type) {
+            return null;
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+    private static class MethodMeta {
+        private String signature;
+        private int timeout;
+        private HedgePolicy hedge;
+        private RetryPolicy retry;
+        private volatile MethodDictionary.Entry local;
     }
 }
@@ -0,0 +1,92 @@
+package com.aric.middleware.rpc.proxy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个方法的对冲策略：
+ * 1. 等待时间：最近 WINDOW 次正常响应耗时的分位数，每 REFRESH 个样本重新计算一次，样本不足时不对冲
+ * 2. 预算：每次调用存入 budget 个令牌，每次对冲消耗一个，令牌不足时不对冲，对冲请求数不会超过调用数的 budget
+ */
+public class HedgePolicy {
+    private static final int WINDOW = 1024;
+    private static final int REFRESH = 128;
+    private static final int MIN_SAMPLES = 32;
+
+    private final int percentile;
+    private final long deposit;
+    // 最多积攒 10 个令牌
+    private final TokenBucket budget = new TokenBucket(10 * TokenBucket.TOKEN, 0);
+
+    private final long[] samples = new long[WINDOW];
+    private long count;
+    private volatile long delayMillis = -1;
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+
+    /**
+     * @param percentile 等待时间取响应耗时的分位数，1 ~ 99
+     * @param budget     对冲请求数占调用数的上限（百分比）
+     */
+    public HedgePolicy(int percentile, int budget) {
+        this.percentile = Math.max(1, Math.min(99, percentile));
+        this.deposit = TokenBucket.TOKEN * Math.max(0, budget) / 100;
+    }
+
+    /**
+     * 记录一次正常响应的耗时
+     */
+    public synchronized void record(long nanos) {
+        samples[(int) (count++ % WINDOW)] = nanos;
+        if (count == MIN_SAMPLES || (count > MIN_SAMPLES && count % REFRESH == 0)) {
+            int size = (int) Math.min(count, WINDOW);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            long nanosAtPercentile = sorted[Math.max(0, (int) Math.ceil(size * percentile / 100.0) - 1)];
+            delayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanosAtPercentile));
+        }
+    }
+
+    /**
+     * 每次调用时存入预算，返回对冲的等待时间，样本不足时返回 -1
+     */
+    public long onCall() {
+        budget.deposit(deposit);
+        return delayMillis;
+    }
+
+    /**
+     * 发起对冲前调用，预算不足时返回 false
+     */
+    public boolean tryHedge() {
+        if (!budget.tryTake()) {
+            return false;
+        }
+        hedged.increment();
+        return true;
+    }
+
+    void onHedgeWin() {
+        wins.increment();
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * 发出的对冲请求数
+     */
+    public long getHedgedCount() {
+        return hedged.sum();
+    }
+
+    /**
+     * 对冲请求先于原请求返回的次数
+     */
+    public long getWinCount() {
+        return wins.sum();
+    }
+}
@@ -0,0 +1,111 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.Request;
+import com.aric.middleware.rpc.network.Response;
+import com.aric.middleware.rpc.network.WriteFutureMap;
+import com.aric.middleware.rpc.serialize.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 进程内调用：服务提供方就在当前 JVM 中时，直接在调用线程上执行 MethodDictionary 中的调用器，不经过编解码和网络
+ * 默认按引用传递参数和返回值；copy 模式用消费者的序列化方式把参数和结果各复制一次，和远程调用一样是传值的
+ * 同步的服务方法在调用线程上执行完才返回，超时时间只对返回 CompletionStage 的方法生效
+ */
+class LocalInvoker {
+    // 直接传递引用（默认）
+    static final String MODE_DIRECT = "direct";
+    // 参数和结果经过一次序列化复制
+    static final String MODE_COPY = "copy";
+    // 不做进程内调用，总是走网络
+    static final String MODE_NONE = "none";
+
+    static String mode(String mode) {
+        if (null == mode || mode.isEmpty()) {
+            return MODE_DIRECT;
+        }
+        mode = mode.toLowerCase();
+        if (!MODE_DIRECT.equals(mode) && !MODE_COPY.equals(mode) && !MODE_NONE.equals(mode)) {
+            throw new IllegalArgumentException("不支持的进程内调用方式: " + mode);
+        }
+        return mode;
+    }
+
+    /**
+     * 返回的 future 和远程调用一致：服务方法抛出异常时以 RpcException 失败
+     *
+     * @param timeout 超时时间（毫秒），同时作为服务方法中再发起调用的截止时间，0 表示没有限制
+     * @param copy    复制参数和结果使用的序列化方式，为 null 时直接传递引用
+     */
+    static CompletableFuture<Response> invoke(MethodDictionary.Entry entry, Object[] args, int timeout, Serializer copy) {
+        RpcContext context = RpcContext.getContext();
+        long previous = context.getDeadline();
+        try {
+            if (null != copy) {
+                args = copy(copy, new Request(0, copy.getId(), 0, args), Request.class).getArgs();
+            }
+            context.setDeadline(timeout > 0 ? System.currentTimeMillis() + timeout : 0);
+            Object result = entry.getInvoker().invoke(args);
+            if (result instanceof CompletionStage) {
+                CompletableFuture<Response> future = ((CompletionStage<?>) result)
+                        .thenApply(value -> response(value, copy))
+                        .toCompletableFuture();
+                if (timeout > 0 && !future.isDone()) {
+                    WriteFutureMap.schedule(() -> future.completeExceptionally(
+                            new RpcException(RpcErrorCode.TIMEOUT_ERROR, timeout + "ms")), timeout);
+                }
+                return future.exceptionallyCompose(e -> CompletableFuture.failedFuture(exception(e)));
+            }
+            return CompletableFuture.completedFuture(response(result, copy));
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(exception(e));
+        } finally {
+            context.setDeadline(previous);
+        }
+    }
+
+    private static Response response(Object result, Serializer copy) {
+        Response response = new Response();
+        response.setResult(result);
+        if (null == copy) {
+            return response;
+        }
+        try {
+            return copy(copy, response, Response.class);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 和远程调用一样，服务方法抛出的异常转换成 SERVER_ERROR，只保留异常信息
+     */
+    private static RpcException exception(Throwable e) {
+        if ((e instanceof InvocationTargetException || e instanceof CompletionException) && null != e.getCause()) {
+            e = e.getCause();
+        }
+        if (e instanceof RpcException) {
+            return (RpcException) e;
+        }
+        return new RpcException(RpcErrorCode.SERVER_ERROR, e.toString());
+    }
+
+    private static <T> T copy(Serializer serializer, T obj, Class<T> clazz) throws IOException {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            serializer.serialize(obj, buf);
+            return serializer.deserialize(buf, buf.readableBytes(), clazz);
+        } finally {
+            buf.release();
+        }
+    }
+}
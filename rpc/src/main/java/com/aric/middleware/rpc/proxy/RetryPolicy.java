@@ -0,0 +1,132 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个方法的重试策略：
+ * 1. 只重试连接失败、超时、服务端繁忙和过载，服务方法本身抛出的异常不重试
+ * 2. 预算：每次成功的调用存入 budget 个令牌，每次重试消耗一个，服务端整体故障时重试数不会超过成功数的 budget
+ * 3. 退避：第 n 次重试前等待 [backoff * 2^(n-1) / 2, backoff * 2^(n-1)) 之间的随机时间，避免重试集中在同一时刻
+ */
+public class RetryPolicy {
+    private static final long MAX_BACKOFF = 1000;
+
+    private final int retries;
+    private final long backoff;
+    private final long deposit;
+    // 初始时允许少量重试，之后由成功的调用补充
+    private final TokenBucket budget = new TokenBucket(10 * TokenBucket.TOKEN, 10 * TokenBucket.TOKEN);
+
+    private final LongAdder firstSuccess = new LongAdder();
+    private final LongAdder retriedSuccess = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param retries 最多重试的次数
+     * @param budget  重试数占成功调用数的上限（百分比）
+     * @param backoff 第一次重试前的退避时间（毫秒），之后每次翻倍
+     */
+    public RetryPolicy(int retries, int budget, int backoff) {
+        this.retries = Math.max(0, retries);
+        this.deposit = TokenBucket.TOKEN * Math.max(0, budget) / 100;
+        this.backoff = Math.max(1, backoff);
+    }
+
+    /**
+     * 第 attempt 次调用（从 1 开始）失败后是否重试，预算不足时不重试
+     */
+    boolean shouldRetry(int attempt, Throwable e) {
+        if (attempt > retries || !isRetryable(e)) {
+            return false;
+        }
+        if (!budget.tryTake()) {
+            budgetExhausted.increment();
+            return false;
+        }
+        retried.increment();
+        return true;
+    }
+
+    long backoff(int attempt) {
+        long max = Math.min(MAX_BACKOFF, backoff << Math.min(attempt - 1, 20));
+        return max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+    }
+
+    void onSuccess(int attempt) {
+        budget.deposit(deposit);
+        if (attempt == 1) {
+            firstSuccess.increment();
+        } else {
+            retriedSuccess.increment();
+        }
+    }
+
+    void onFailure() {
+        failed.increment();
+    }
+
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof CompletionException && null != e.getCause()) {
+            e = e.getCause();
+        }
+        if (e instanceof InterruptedException) {
+            return false;
+        }
+        if (!(e instanceof RpcException)) {
+            // 连接断开、写失败等网络异常
+            return true;
+        }
+        int code = ((RpcException) e).getCode();
+        return code == RpcErrorCode.SYSTEM_ERROR.getCode()
+                || code == RpcErrorCode.TIMEOUT_ERROR.getCode()
+                || code == RpcErrorCode.SERVER_BUSY.getCode()
+                || code == RpcErrorCode.OVERLOAD.getCode()
+                || code == RpcErrorCode.CLIENT_BUSY.getCode();
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * 第一次调用就成功的次数
+     */
+    public long getFirstSuccessCount() {
+        return firstSuccess.sum();
+    }
+
+    /**
+     * 重试之后才成功的次数
+     */
+    public long getRetriedSuccessCount() {
+        return retriedSuccess.sum();
+    }
+
+    /**
+     * 发出的重试次数
+     */
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    /**
+     * 因为预算不足放弃重试的次数
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * 最终失败的次数
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+}
@@ -0,0 +1,151 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.loadbalance.ProviderStats;
+import com.aric.middleware.rpc.network.BatchRequest;
+import com.aric.middleware.rpc.network.ClientSocket;
+import com.aric.middleware.rpc.network.Request;
+import com.aric.middleware.rpc.network.Response;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 批量调用，把多次代理方法调用合并到一个帧中发送，减少小请求的帧头、系统调用和往返次数
+ * 发往同一条连接、使用同一种序列化方式的调用合并为一个批量请求，结果按位置返回给各自的 future
+ *
+ * 使用方式：
+ * RpcBatch batch = new RpcBatch();
+ * CompletableFuture<String> a = batch.call(() -> helloService.say("a"));
+ * CompletableFuture<Void> b = batch.run(() -> helloService.log("b"));
+ * batch.execute().join();
+ */
+public class RpcBatch {
+    private static final ThreadLocal<RpcBatch> RECORDING = new ThreadLocal<>();
+
+    private final Map<Key, Group> groups = new LinkedHashMap<>();
+    private CompletableFuture<Object> recorded;
+    private boolean executed;
+
+    /**
+     * 记录 call 中的一次代理方法调用，execute 之后返回的 future 才会完成
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> call(Supplier<T> call) {
+        return (CompletableFuture<T>) record(call::get);
+    }
+
+    /**
+     * 记录返回值为 void 的一次代理方法调用
+     */
+    public CompletableFuture<Void> run(Runnable call) {
+        return record(call).thenApply(v -> null);
+    }
+
+    /**
+     * 发送记录的所有调用，每个分组一个帧，全部完成时返回的 future 完成
+     */
+    public CompletableFuture<Void> execute() {
+        if (executed) {
+            throw new IllegalStateException("批量调用已经执行过");
+        }
+        executed = true;
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(groups.size());
+        for (Map.Entry<Key, Group> entry : groups.entrySet()) {
+            futures.add(send(entry.getKey(), entry.getValue()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Group group : groups.values()) {
+            size += group.futures.size();
+        }
+        return size;
+    }
+
+    private CompletableFuture<Object> record(Runnable call) {
+        if (executed) {
+            throw new IllegalStateException("批量调用已经执行过");
+        }
+        recorded = null;
+        RECORDING.set(this);
+        try {
+            call.run();
+        } finally {
+            RECORDING.remove();
+        }
+
+        CompletableFuture<Object> future = recorded;
+        recorded = null;
+        if (null == future) {
+            throw new IllegalStateException("批量调用中没有发起 rpc 调用");
+        }
+        return future;
+    }
+
+    /**
+     * 由代理类调用，当前线程是否正在记录批量调用
+     */
+    static RpcBatch current() {
+        return RECORDING.get();
+    }
+
+    /**
+     * 由代理类调用，记录一次调用，每次 call 或 run 只能记录一次
+     */
+    void add(ProviderConfig provider, ClientSocket client, Request request) {
+        if (null != recorded) {
+            throw new IllegalStateException("批量调用中每次 call 只能发起一次 rpc 调用");
+        }
+        Group group = groups.computeIfAbsent(new Key(client, request.getSerializer()), key -> new Group(provider));
+        group.batch.add(request.getMethodId(), request.getArgs());
+        // 一个帧共用一个超时时间，取其中最长的
+        group.batch.setTimeout(Math.max(group.batch.getTimeout(), request.getTimeout()));
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        group.futures.add(future);
+        recorded = future;
+    }
+
+    private CompletableFuture<?> send(Key key, Group group) {
+        group.batch.setSerializer(key.serializer());
+        // 一个帧只记录一次在途请求和耗时
+        ProviderStats stats = ProviderStats.get(group.provider);
+        long start = stats.begin();
+        return key.client().writeBatchAsync(group.batch).whenComplete((responses, e) -> {
+            stats.end(start, null == e || !RetryPolicy.isRetryable(e));
+            for (int i = 0; i < group.futures.size(); i++) {
+                CompletableFuture<Object> future = group.futures.get(i);
+                if (null != e) {
+                    future.completeExceptionally(e);
+                    continue;
+                }
+                Response response = responses.get(i);
+                if (null != response.getError()) {
+                    future.completeExceptionally(response.toException());
+                } else {
+                    future.complete(response.getResult());
+                }
+            }
+        });
+    }
+
+    private record Key(ClientSocket client, byte serializer) {
+    }
+
+    private static class Group {
+        private final ProviderConfig provider;
+        private final BatchRequest batch = new BatchRequest();
+        private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+
+        Group(ProviderConfig provider) {
+            this.provider = provider;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 调用上下文，保存在当前线程中
+ *
+ * 异步调用的使用方式：
+ * CompletableFuture<String> future = RpcContext.asyncCall(() -> helloService.say("hi"));
+ *
+ * 服务端执行服务方法时，上下文中保存请求的截止时间，方法中再发起的 rpc 调用只能使用剩余的时间
+ */
+public class RpcContext {
+    private static final ThreadLocal<RpcContext> LOCAL = ThreadLocal.withInitial(RpcContext::new);
+
+    private boolean async;
+    private CompletableFuture<?> future;
+    // 当前调用链的截止时间（毫秒时间戳），0 表示没有限制
+    private long deadline;
+
+    public static RpcContext getContext() {
+        return LOCAL.get();
+    }
+
+    /**
+     * 以异步的方式执行 call 中的一次代理方法调用，立即返回该次调用的 future
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> asyncCall(Supplier<T> call) {
+        RpcContext context = getContext();
+        context.async = true;
+        context.future = null;
+        try {
+            call.get();
+        } finally {
+            context.async = false;
+        }
+
+        CompletableFuture<T> future = (CompletableFuture<T>) context.future;
+        context.future = null;
+        if (null == future) {
+            throw new IllegalStateException("asyncCall 中没有发起 rpc 调用");
+        }
+        return future;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * 由服务端在执行服务方法前设置，执行完成后清除
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * 由代理类调用，根据调用链的截止时间收紧本次调用的超时时间，剩余时间不足时直接失败，不再发出请求
+     */
+    int remaining(int timeout) {
+        if (0 == deadline) {
+            return timeout;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new RpcException(RpcErrorCode.TIMEOUT_ERROR, "调用链已超过截止时间");
+        }
+        return (int) Math.min(timeout, remaining);
+    }
+
+    /**
+     * 由代理类调用，当前调用是否需要异步执行，只对 asyncCall 中的第一次调用生效
+     */
+    boolean takeAsync() {
+        boolean async = this.async;
+        this.async = false;
+        return async;
+    }
+
+    void setFuture(CompletableFuture<?> future) {
+        this.future = future;
+    }
+}
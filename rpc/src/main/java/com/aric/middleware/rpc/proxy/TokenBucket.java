@@ -0,0 +1,36 @@
+package com.aric.middleware.rpc.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲和重试的预算：令牌以千分之一为单位，调用时存入一定比例，对冲或重试一次消耗一个
+ * 令牌有上限，避免空闲一段时间后集中放出大量额外的请求
+ */
+class TokenBucket {
+    static final long TOKEN = 1000;
+
+    private final long max;
+    private final AtomicLong tokens;
+
+    TokenBucket(long max, long initial) {
+        this.max = max;
+        this.tokens = new AtomicLong(Math.min(max, initial));
+    }
+
+    void deposit(long amount) {
+        if (amount > 0) {
+            tokens.getAndUpdate(current -> Math.min(max, current + amount));
+        }
+    }
+
+    boolean tryTake() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
@@ -1,27 +1,313 @@
 package com.aric.middleware.rpc.register;
 
-import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson.JSON;
 import com.aric.middleware.rpc.config.ProviderConfig;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis 的注册中心
+ * 1. 接口的服务提供方保存在以接口名为 key 的 set 中
+ * 2. 注册后向 CHANNEL 发布接口名，订阅线程收到后刷新本地缓存
+ * 3. 消费者发现服务只读本地缓存，缓存中没有的接口才同步查询 Redis
+ * 4. 每个服务提供方有一个带过期时间的租约 key，由心跳续期，租约过期的成员视为下线
+ * 5. 租约 key 按地址区分，值为当前注册的成员，同一地址以不同的配置（权重、domain socket）重新注册后，旧的成员随之失效
+ */
 public class RedisRegistryCenter {
-    private static Jedis jedis;
+    private static final Logger logger = LoggerFactory.getLogger(RedisRegistryCenter.class);
+
+    public static final String CHANNEL = "rpc:registry:changed";
+    public static final String LEASE_PREFIX = "rpc:lease:";
+    public static final int DEFAULT_LEASE_SECONDS = 9;
+
+    private static final Object refreshLock = new Object();
+
+    // 本进程注册的服务提供方，心跳时为它们续租
+    private static final Set<ProviderConfig> registered = ConcurrentHashMap.newKeySet();
+
+    private static volatile JedisPool jedisPool;
+    private static volatile RegistryCache cache = new RegistryCache(null);
+    private static volatile Subscriber subscriber;
+    private static volatile ScheduledExecutorService heartbeat;
+    private static volatile int leaseSeconds = DEFAULT_LEASE_SECONDS;
 
     public static void init(String host, int port) {
-        jedis = new Jedis(host, port);
+        init(host, port, null, DEFAULT_LEASE_SECONDS);
     }
 
+    /**
+     * @param snapshot     本地快照文件，为空时不做持久化
+     * @param leaseSeconds 租约时长，心跳和过期检查的间隔为其 1/3
+     */
+    public static synchronized void init(String host, int port, String snapshot, int leaseSeconds) {
+        shutdown();
+        // 注册中心的操作很少，借出连接时检查一次，Redis 重启后不会拿到失效的连接
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setTestOnBorrow(true);
+        jedisPool = new JedisPool(poolConfig, host, port);
+        RegistryCache cache = new RegistryCache(null == snapshot || snapshot.isEmpty() ? null : Paths.get(snapshot));
+        cache.load();
+        RedisRegistryCenter.cache = cache;
+
+        // 订阅线程在后台连接，注册中心慢或者不可用时不阻塞启动
+        subscriber = new Subscriber(host, port);
+        subscriber.start();
+
+        RedisRegistryCenter.leaseSeconds = Math.max(1, leaseSeconds);
+        long interval = TimeUnit.SECONDS.toMillis(RedisRegistryCenter.leaseSeconds) / 3;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rpc-registry-heartbeat", true));
+        heartbeat.scheduleWithFixedDelay(RedisRegistryCenter::beat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 先写租约再加入集合，消费者看到的成员一定带着租约
+     */
     public static Long addProvider(ProviderConfig providerConfig) {
-        return jedis.sadd(providerConfig.getNozzle(), JSON.toJSONString(providerConfig));
+        String member = JSON.toJSONString(providerConfig);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.setex(leaseKey(providerConfig), leaseSeconds, member);
+            Long added = jedis.sadd(providerConfig.getNozzle(), member);
+            jedis.publish(CHANNEL, providerConfig.getNozzle());
+            registered.add(providerConfig);
+            return added;
+        }
+    }
+
+    /**
+     * 正常下线时主动注销，消费者不用等到租约过期
+     */
+    public static void removeProvider(ProviderConfig providerConfig) {
+        registered.remove(providerConfig);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.srem(providerConfig.getNozzle(), JSON.toJSONString(providerConfig));
+            jedis.del(leaseKey(providerConfig));
+            jedis.publish(CHANNEL, providerConfig.getNozzle());
+        }
+    }
+
+    /**
+     * 同一个接口、同一个地址只有一个租约，值为最后一次注册的成员
+     */
+    static String leaseKey(ProviderConfig providerConfig) {
+        return LEASE_PREFIX + providerConfig.getNozzle() + "@" + providerConfig.getHost() + ":" + providerConfig.getPort();
     }
 
     public static ProviderConfig getProvider(String key) {
-        String srandmember = jedis.srandmember(key);
-        if (StrUtil.isEmpty(srandmember)) {
+        List<ProviderConfig> providers = getProviders(key);
+        if (providers.isEmpty()) {
             return null;
         }
-        return JSON.parseObject(srandmember, ProviderConfig.class);
+        return providers.get(ThreadLocalRandom.current().nextInt(providers.size()));
+    }
+
+    /**
+     * 获取接口的所有服务提供方，由消费者在每次调用时做负载均衡
+     * 优先读本地缓存，返回的列表不可修改
+     */
+    public static List<ProviderConfig> getProviders(String key) {
+        List<ProviderConfig> providers = cache.get(key);
+        if (null != providers) {
+            return providers;
+        }
+        return refresh(key);
+    }
+
+    /**
+     * 从 Redis 拉取接口的最新服务提供方列表并更新本地缓存
+     */
+    static List<ProviderConfig> refresh(String key) {
+        // 查询和更新缓存放在同一把锁里，避免先查到的旧结果覆盖后查到的新结果
+        synchronized (refreshLock) {
+            List<ProviderConfig> providers = new ArrayList<>();
+            try (Jedis jedis = jedisPool.getResource()) {
+                List<String> members = new ArrayList<>(jedis.smembers(key));
+                if (!members.isEmpty()) {
+                    List<ProviderConfig> configs = new ArrayList<>(members.size());
+                    String[] leaseKeys = new String[members.size()];
+                    for (int i = 0; i < members.size(); i++) {
+                        configs.add(JSON.parseObject(members.get(i), ProviderConfig.class));
+                        leaseKeys[i] = leaseKey(configs.get(i));
+                    }
+
+                    // 租约已经过期、或者同一地址已经以其他配置重新注册的成员从集合中清理掉，并通知其他消费者
+                    List<String> leases = jedis.mget(leaseKeys);
+                    List<String> expired = new ArrayList<>();
+                    for (int i = 0; i < members.size(); i++) {
+                        if (!members.get(i).equals(leases.get(i))) {
+                            expired.add(members.get(i));
+                        } else {
+                            providers.add(configs.get(i));
+                        }
+                    }
+                    if (!expired.isEmpty()) {
+                        jedis.srem(key, expired.toArray(new String[0]));
+                        jedis.publish(CHANNEL, key);
+                        logger.warn("接口 {} 的服务提供方租约过期或已被替换, 已移除: {}", key, expired);
+                    }
+                }
+            }
+            if (cache.update(key, providers)) {
+                logger.info("接口 {} 的服务提供方变更: {}", key, JSON.toJSONString(providers));
+            }
+            return Collections.unmodifiableList(providers);
+        }
+    }
+
+    /**
+     * 定时任务：为本进程注册的服务提供方续租，并检查缓存中的接口有没有过期的成员
+     * 续租时如果发现自己已经被移出集合（Redis 重启、长时间停顿被判定过期），重新加入
+     */
+    private static void beat() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (ProviderConfig providerConfig : registered) {
+                String member = JSON.toJSONString(providerConfig);
+                jedis.setex(leaseKey(providerConfig), leaseSeconds, member);
+                if (jedis.sadd(providerConfig.getNozzle(), member) > 0) {
+                    jedis.publish(CHANNEL, providerConfig.getNozzle());
+                    logger.warn("服务提供方重新加入注册中心: {}", member);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("注册中心心跳失败: {}", e.getMessage());
+        }
+        refreshAll();
+    }
+
+    private static void refreshAll() {
+        for (String nozzle : cache.nozzles()) {
+            refreshQuietly(nozzle);
+        }
+    }
+
+    private static void refreshQuietly(String nozzle) {
+        try {
+            refresh(nozzle);
+        } catch (Exception e) {
+            logger.warn("刷新接口 {} 的服务提供方失败", nozzle, e);
+        }
+    }
+
+    /**
+     * 先注销本进程注册的服务提供方，再关闭连接
+     */
+    public static synchronized void shutdown() {
+        if (null != heartbeat) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+        for (ProviderConfig providerConfig : registered) {
+            try {
+                removeProvider(providerConfig);
+            } catch (Exception e) {
+                logger.warn("注销服务提供方失败: {}", e.getMessage());
+            }
+        }
+        registered.clear();
+        if (null != subscriber) {
+            subscriber.close();
+            subscriber = null;
+        }
+        if (null != jedisPool) {
+            jedisPool.destroy();
+            jedisPool = null;
+        }
+    }
+
+    /**
+     * 订阅变更通知的后台线程，连接断开后按退避时间重连
+     * 每次订阅成功后刷新一遍本地缓存中的所有接口，补上断开期间错过的通知
+     */
+    private static class Subscriber extends Thread {
+        private final String host;
+        private final int port;
+        private volatile boolean closed;
+        private volatile JedisPubSub pubSub;
+
+        Subscriber(String host, int port) {
+            super("rpc-registry-subscriber");
+            setDaemon(true);
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void run() {
+            long backoff = 100;
+            while (!closed) {
+                try (Jedis jedis = new Jedis(host, port)) {
+                    pubSub = new JedisPubSub() {
+                        @Override
+                        public void onSubscribe(String channel, int subscribedChannels) {
+                            refreshAll();
+                        }
+
+                        @Override
+                        public void onMessage(String channel, String message) {
+                            refreshQuietly(message);
+                        }
+
+                        @Override
+                        public void onPMessage(String pattern, String channel, String message) {
+                        }
+
+                        @Override
+                        public void onUnsubscribe(String channel, int subscribedChannels) {
+                        }
+
+                        @Override
+                        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+                        }
+
+                        @Override
+                        public void onPSubscribe(String pattern, int subscribedChannels) {
+                        }
+                    };
+                    backoff = 100;
+                    jedis.subscribe(pubSub, CHANNEL);
+                } catch (Exception e) {
+                    pubSub = null;
+                    if (closed) {
+                        return;
+                    }
+                    logger.warn("注册中心订阅断开, {}ms 后重连: {}", backoff, e.getMessage());
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    backoff = Math.min(backoff * 2, 5000);
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            JedisPubSub pubSub = this.pubSub;
+            if (null != pubSub && pubSub.isSubscribed()) {
+                try {
+                    pubSub.unsubscribe();
+                } catch (Exception ignore) {
+                    // 连接已经断开，订阅线程会自己退出
+                }
+            }
+            interrupt();
+        }
     }
 
     public static void main(String[] args) {
@@ -36,5 +322,8 @@ public class RedisRegistryCenter {
         ProviderConfig providerConfig1 = RedisRegistryCenter.getProvider(providerConfig.getNozzle());
 
         System.out.println(JSON.toJSONString(providerConfig1));
+        System.out.println(JSON.toJSONString(RedisRegistryCenter.getProviders(providerConfig.getNozzle())));
+
+        RedisRegistryCenter.shutdown();
     }
 }
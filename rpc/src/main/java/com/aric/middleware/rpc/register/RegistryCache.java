@@ -0,0 +1,106 @@
+package com.aric.middleware.rpc.register;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.aric.middleware.rpc.config.ProviderConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 注册中心的本地缓存：接口 -> 服务提供方列表
+ * 1. 启动时从快照文件加载，注册中心不可用时消费者也能启动
+ * 2. 由注册中心的变更通知更新，发现服务只读本地内存
+ * 3. 内容变化时写回快照文件
+ */
+public class RegistryCache {
+    private static final Logger logger = LoggerFactory.getLogger(RegistryCache.class);
+
+    private final ConcurrentMap<String, List<ProviderConfig>> providers = new ConcurrentHashMap<>();
+    private final Path snapshot;
+
+    /**
+     * @param snapshot 快照文件，为 null 时不做持久化
+     */
+    public RegistryCache(Path snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 从快照文件加载，文件不存在或者损坏时从空缓存开始
+     */
+    public void load() {
+        if (null == snapshot || !Files.exists(snapshot)) {
+            return;
+        }
+        try {
+            String text = new String(Files.readAllBytes(snapshot), StandardCharsets.UTF_8);
+            Map<String, List<ProviderConfig>> map = JSON.parseObject(text, new TypeReference<Map<String, List<ProviderConfig>>>() {
+            });
+            if (null != map) {
+                map.forEach((nozzle, list) -> providers.put(nozzle, Collections.unmodifiableList(list)));
+            }
+            logger.info("从快照加载注册信息: {}, 接口数: {}", snapshot, providers.size());
+        } catch (Exception e) {
+            logger.warn("快照文件读取失败, 忽略: {}", snapshot, e);
+        }
+    }
+
+    /**
+     * 未缓存过的接口返回 null，和"没有服务提供方"区分开
+     */
+    public List<ProviderConfig> get(String nozzle) {
+        return providers.get(nozzle);
+    }
+
+    public Set<String> nozzles() {
+        return providers.keySet();
+    }
+
+    /**
+     * 更新接口的服务提供方列表，内容有变化时写回快照
+     *
+     * @return 内容是否有变化
+     */
+    public boolean update(String nozzle, List<ProviderConfig> list) {
+        List<ProviderConfig> old = providers.put(nozzle, Collections.unmodifiableList(list));
+        if (null != old && new HashSet<>(old).equals(new HashSet<>(list))) {
+            return false;
+        }
+        save();
+        return true;
+    }
+
+    /**
+     * 先写临时文件再替换，进程中途退出也不会留下半个文件
+     */
+    private synchronized void save() {
+        if (null == snapshot) {
+            return;
+        }
+        try {
+            Path dir = snapshot.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, snapshot.getFileName().toString(), ".tmp");
+            String text = JSON.toJSONString(new TreeMap<>(providers), SerializerFeature.PrettyFormat);
+            Files.write(tmp, text.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("快照文件写入失败: {}", snapshot, e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.aric.middleware.rpc.serialize;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于 fastjson 的序列化，可读性好，方便和其他语言互通
+ * 参数和返回值声明为 Object，需要写入 @type 才能还原出具体的类型
+ * 不开启 autoType，帧体中的 @type 只能是 fastjson 内置映射的 JDK 类型或者 SerializerFactory 允许的类型，
+ * 否则任意对端都可以让服务端创建 classpath 中的任意类
+ */
+public class JsonSerializer implements Serializer {
+    public static final byte ID = 3;
+    public static final String NAME = "json";
+
+    // 独立的 ParserConfig，只用于 rpc 内部的通信，fastjson 会在其中缓存每个类的反序列化器
+    private static final ParserConfig PARSER_CONFIG = new ParserConfig();
+
+    // 直接内存的 ByteBuf 需要先读到数组中，每个线程复用一个
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[512]);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void allow(String prefix) {
+        PARSER_CONFIG.addAccept(prefix);
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        JSON.writeJSONString(new ByteBufOutputStream(out), obj, SerializerFeature.WriteClassName);
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clzz) throws IOException {
+        byte[] bytes;
+        int offset;
+        if (in.hasArray()) {
+            bytes = in.array();
+            offset = in.arrayOffset() + in.readerIndex();
+        } else {
+            bytes = BUFFER.get();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+                BUFFER.set(bytes);
+            }
+            offset = 0;
+            in.getBytes(in.readerIndex(), bytes, 0, length);
+        }
+        in.skipBytes(length);
+
+        return JSON.parseObject(bytes, offset, length, StandardCharsets.UTF_8, clzz,
+                PARSER_CONFIG, null, JSON.DEFAULT_PARSER_FEATURE);
+    }
+}
@@ -0,0 +1,134 @@
+package com.aric.middleware.rpc.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Kryo 实例不是线程安全的，每个线程一个实例
+ * Kryo 内部会缓存每个类的序列化器和实例化器，线程复用实例后这部分开销只有第一次才有
+ * 参数和返回值的类型不固定，不要求提前注册，帧体中按类名读取的类型只能是常用的 JDK 类型或者 SerializerFactory 允许的类型，
+ * 在加载类之前检查，否则任意对端都可以让服务端不经过构造器创建 classpath 中的任意类
+ */
+public class KryoSerializer implements Serializer {
+    public static final byte ID = 2;
+    public static final String NAME = "kryo";
+
+    // 允许的 JDK 包，只匹配包本身，不包含子包（如 java.lang.reflect）
+    private static final Set<String> JDK_PACKAGES = new HashSet<>(Arrays.asList(
+            "java.lang", "java.util", "java.util.concurrent", "java.util.concurrent.atomic", "java.math", "java.time"));
+    private static final CopyOnWriteArrayList<String> PREFIXES = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<Kryo> KRYO = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo(new AllowListClassResolver(), null);
+        kryo.setRegistrationRequired(false);
+        kryo.setReferences(false);
+        // 优先使用无参构造器，没有时直接创建实例
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        return kryo;
+    });
+
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(512, -1));
+    private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(() -> new Input(512));
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void allow(String prefix) {
+        PREFIXES.addIfAbsent(prefix);
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        Output output = OUTPUT.get();
+        output.setOutputStream(new ByteBufOutputStream(out));
+        try {
+            KRYO.get().writeObject(output, obj);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clzz) throws IOException {
+        Input input = INPUT.get();
+        Kryo kryo = KRYO.get();
+
+        if (in.hasArray()) {
+            input.setBuffer(in.array(), in.arrayOffset() + in.readerIndex(), length);
+            try {
+                T obj = kryo.readObject(input, clzz);
+                in.skipBytes(length);
+                return obj;
+            } finally {
+                input.setBuffer(new byte[0]);
+            }
+        }
+
+        input.setInputStream(new ByteBufInputStream(in, length));
+        try {
+            return kryo.readObject(input, clzz);
+        } finally {
+            input.setInputStream(null);
+        }
+    }
+
+    static boolean isAllowed(String className) {
+        // 数组按元素类型判断，如 [Lcom.example.User;
+        String name = className;
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+        if (name.length() != className.length()) {
+            if (!name.startsWith("L")) {
+                return true; // 基本类型的数组
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+        int index = name.lastIndexOf('.');
+        if (index > 0 && JDK_PACKAGES.contains(name.substring(0, index))) {
+            return true;
+        }
+        for (String prefix : PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取未注册的类型时先按类名检查，不允许的类型不会被加载
+     */
+    private static class AllowListClassResolver extends DefaultClassResolver {
+        @Override
+        protected Class getTypeByName(String className) {
+            if (!isAllowed(className)) {
+                throw new KryoException("不允许反序列化的类型: " + className);
+            }
+            return super.getTypeByName(className);
+        }
+    }
+}
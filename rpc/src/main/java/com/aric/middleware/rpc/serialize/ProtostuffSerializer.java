@@ -0,0 +1,74 @@
+package com.aric.middleware.rpc.serialize;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtostuffIOUtil;
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+import java.io.IOException;
+
+public class ProtostuffSerializer implements Serializer {
+    public static final byte ID = 1;
+    public static final String NAME = "protostuff";
+
+    // 每个类的 schema 只查找一次，schema.newMessage() 使用 schema 内缓存的实例化器创建对象
+    private static final ClassValue<Schema<?>> SCHEMAS = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return RuntimeSchema.getSchema(type);
+        }
+    };
+
+    // 每个线程复用一个序列化缓冲区，避免每条消息都分配
+    private static final ThreadLocal<LinkedBuffer> BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(512));
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        Schema<Object> schema = (Schema<Object>) SCHEMAS.get(obj.getClass());
+
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            ProtostuffIOUtil.writeTo(new ByteBufOutputStream(out), obj, schema, buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * 堆内存的 ByteBuf 直接读取底层数组，直接内存的 ByteBuf 通过流读取
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(ByteBuf in, int length, Class<T> clzz) throws IOException {
+        Schema<T> schema = (Schema<T>) SCHEMAS.get(clzz);
+        T obj = schema.newMessage();
+
+        if (in.hasArray()) {
+            ProtostuffIOUtil.mergeFrom(in.array(), in.arrayOffset() + in.readerIndex(), length, obj, schema);
+            in.skipBytes(length);
+            return obj;
+        }
+
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            ProtostuffIOUtil.mergeFrom(new ByteBufInputStream(in, length), obj, schema, buffer);
+        } finally {
+            buffer.clear();
+        }
+        return obj;
+    }
+}
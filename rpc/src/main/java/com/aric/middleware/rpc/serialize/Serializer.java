@@ -0,0 +1,39 @@
+package com.aric.middleware.rpc.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * 序列化扩展点，id 会写入帧头，服务端按照请求帧中的 id 选择序列化方式，并用同样的方式返回响应
+ * 自定义实现通过 META-INF/services/com.aric.middleware.rpc.serialize.Serializer 注册
+ */
+public interface Serializer {
+
+    /**
+     * 写入帧头的编号，1 ~ 127，内置实现占用 1 ~ 3
+     */
+    byte getId();
+
+    /**
+     * 配置中使用的名称，如 <rpc:consumer serializer="kryo"/>
+     */
+    String getName();
+
+    /**
+     * 序列化到 out 的 writerIndex 处
+     */
+    void serialize(Object obj, ByteBuf out) throws IOException;
+
+    /**
+     * 从 in 的 readerIndex 处反序列化 length 个字节
+     */
+    <T> T deserialize(ByteBuf in, int length, Class<T> clzz) throws IOException;
+
+    /**
+     * 允许反序列化以 prefix 开头的类型，帧体中带有类型名的序列化方式只能创建允许的类型
+     * 由 SerializerFactory.allow 统一调用，不按类型名创建对象的实现可以忽略
+     */
+    default void allow(String prefix) {
+    }
+}
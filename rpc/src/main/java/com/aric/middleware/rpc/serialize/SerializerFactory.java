@@ -0,0 +1,140 @@
+package com.aric.middleware.rpc.serialize;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列化方式的注册表，内置 protostuff、kryo、json 三种，其余的通过 ServiceLoader 加载
+ * 同时维护允许从网络中反序列化的类型前缀，rpc 自身的消息类型总是允许，
+ * 暴露和引用服务时自动加入接口所在的包，其他包中的参数类型通过 allow 加入
+ */
+public class SerializerFactory {
+    private static final Logger logger = LoggerFactory.getLogger(SerializerFactory.class);
+
+    public static final String DEFAULT = ProtostuffSerializer.NAME;
+
+    private static final Serializer[] byId = new Serializer[128];
+    private static final Map<String, Serializer> byName = new ConcurrentHashMap<>();
+    private static final Set<String> allowed = ConcurrentHashMap.newKeySet();
+
+    static {
+        register(new ProtostuffSerializer());
+        register(new KryoSerializer());
+        register(new JsonSerializer());
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+        allow("com.aric.middleware.rpc.");
+    }
+
+    private static void register(Serializer serializer) {
+        int id = serializer.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException("序列化编号必须大于 0: " + serializer.getName());
+        }
+        if (null != byId[id]) {
+            logger.warn("序列化编号 {} 已被 {} 占用, 忽略 {}", id, byId[id].getName(), serializer.getName());
+            return;
+        }
+        byId[id] = serializer;
+        byName.put(serializer.getName(), serializer);
+    }
+
+    public static Serializer getDefault() {
+        return byId[ProtostuffSerializer.ID];
+    }
+
+    /**
+     * 根据帧头中的编号获取，不存在时返回 null
+     */
+    public static Serializer get(byte id) {
+        if (id <= 0) {
+            return null;
+        }
+        return byId[id];
+    }
+
+    /**
+     * 根据配置中的名称获取，名称为空时返回默认的 protostuff
+     */
+    public static Serializer get(String name) {
+        if (null == name || name.isEmpty()) {
+            return getDefault();
+        }
+        Serializer serializer = byName.get(name);
+        if (null == serializer) {
+            throw new IllegalArgumentException("不支持的序列化方式: " + name);
+        }
+        return serializer;
+    }
+
+    /**
+     * 本地支持的所有序列化编号
+     */
+    public static List<Integer> getIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (Serializer serializer : byId) {
+            if (null != serializer) {
+                ids.add((int) serializer.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 逗号分隔的名称对应的序列化编号，服务端只接受其中的序列化方式，握手时下发给客户端
+     * 为空时只开启默认的 protostuff
+     */
+    public static List<Integer> getIds(String names) {
+        List<Integer> ids = new ArrayList<>();
+        if (null == names || names.trim().isEmpty()) {
+            ids.add((int) getDefault().getId());
+            return ids;
+        }
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                ids.add((int) get(name.trim()).getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 允许反序列化以 prefix 开头的类型，如 com.example.dto.
+     */
+    public static void allow(String prefix) {
+        if (null == prefix || prefix.isEmpty() || !allowed.add(prefix)) {
+            return;
+        }
+        for (Serializer serializer : byId) {
+            if (null != serializer) {
+                serializer.allow(prefix);
+            }
+        }
+    }
+
+    /**
+     * 允许 className 所在的包，服务接口的参数和返回值通常和接口定义在一起
+     */
+    public static void allowPackageOf(String className) {
+        int index = null == className ? -1 : className.lastIndexOf('.');
+        if (index > 0) {
+            allow(className.substring(0, index + 1));
+        }
+    }
+
+    /**
+     * 当前允许反序列化的类型前缀
+     */
+    public static Set<String> getAllowed() {
+        return Collections.unmodifiableSet(allowed);
+    }
+}
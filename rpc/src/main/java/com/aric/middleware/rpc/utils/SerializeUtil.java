@@ -5,6 +5,9 @@ import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+/**
+ * protostuff 序列化的简单封装，网络传输使用的序列化见 com.aric.middleware.rpc.serialize
+ */
 public class SerializeUtil {
 
     public static <T> byte[] seriazlize(T obj) {
@@ -23,8 +26,8 @@ public class SerializeUtil {
     }
 
     public static <T> T deserialize(byte[] data, Class<T> clzz) throws Exception {
-        T obj = clzz.getDeclaredConstructor().newInstance();
         Schema<T> schema = RuntimeSchema.getSchema(clzz);
+        T obj = schema.newMessage();
 
         ProtostuffIOUtil.mergeFrom(data, obj, schema);
         return obj;
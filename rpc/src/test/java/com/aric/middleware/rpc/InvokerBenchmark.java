@@ -0,0 +1,66 @@
+package com.aric.middleware.rpc;
+
+import com.aric.middleware.rpc.network.Invoker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端方法调用的对比：
+ * reflect: 原来 ServerHanlder 中每次请求都 Class.forName + getMethod + Method.invoke
+ * invoker: 暴露接口时预编译好的 Invoker（MethodHandle）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+
+    public interface Greeting {
+        String say(String name, int times);
+    }
+
+    public static class GreetingImpl implements Greeting {
+        @Override
+        public String say(String name, int times) {
+            return name;
+        }
+    }
+
+    private final Object bean = new GreetingImpl();
+    private final String nozzle = Greeting.class.getName();
+    private final Class<?>[] parameterTypes = {String.class, int.class};
+    private final Object[] args = {"小明", 3};
+
+    private Invoker invoker;
+
+    @Setup
+    public void setup() throws Exception {
+        invoker = new Invoker(bean, Greeting.class.getMethod("say", parameterTypes));
+    }
+
+    @Benchmark
+    public Object reflect() throws Exception {
+        Class<?> clzz = Class.forName(nozzle);
+        Method method = clzz.getMethod("say", parameterTypes);
+        return method.invoke(bean, args);
+    }
+
+    @Benchmark
+    public Object invoker() throws Throwable {
+        return invoker.invoke(args);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(InvokerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
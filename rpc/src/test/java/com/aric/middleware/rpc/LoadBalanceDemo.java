@@ -0,0 +1,73 @@
+package com.aric.middleware.rpc;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.loadbalance.LoadBalance;
+import com.aric.middleware.rpc.loadbalance.LoadBalanceFactory;
+import com.aric.middleware.rpc.loadbalance.ProviderStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 三个服务提供方，其中 7003 的响应耗时是其他两个的 10 倍，7002 的权重是其他的两倍
+ * 观察各个策略下的流量分布
+ */
+public class LoadBalanceDemo {
+
+    public static void main(String[] args) throws InterruptedException {
+        for (String name : new String[]{"random", "roundrobin", "leastactive", "p2c"}) {
+            run(name);
+        }
+    }
+
+    private static void run(String name) throws InterruptedException {
+        List<ProviderConfig> providers = new ArrayList<>();
+        // 每个策略用不同的端口，避免统计互相影响
+        int base = 7000 + name.length() * 10;
+        providers.add(provider(base + 1, 100));
+        providers.add(provider(base + 2, 200));
+        providers.add(provider(base + 3, 100));
+
+        LoadBalance loadBalance = LoadBalanceFactory.create(name);
+        Map<Integer, AtomicLong> counts = new ConcurrentHashMap<>();
+        long deadline = System.currentTimeMillis() + 2000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 16; i++) {
+            executor.execute(() -> {
+                while (System.currentTimeMillis() < deadline) {
+                    ProviderConfig provider = loadBalance.select(providers);
+                    ProviderStats stats = ProviderStats.get(provider);
+                    long start = stats.begin();
+                    try {
+                        Thread.sleep(provider.getPort() == base + 3 ? 10 : 1);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        stats.end(start, true);
+                    }
+                    counts.computeIfAbsent(provider.getPort() - base, k -> new AtomicLong()).incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.printf("%-12s fast=%-8s fast(weight 200)=%-8s slow=%s%n", name, counts.get(1), counts.get(2), counts.get(3));
+    }
+
+    private static ProviderConfig provider(int port, int weight) {
+        ProviderConfig provider = new ProviderConfig();
+        provider.setNozzle("demo");
+        provider.setHost("127.0.0.1");
+        provider.setPort(port);
+        provider.setWeight(weight);
+        return provider;
+    }
+}
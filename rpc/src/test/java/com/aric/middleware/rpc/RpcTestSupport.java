@@ -0,0 +1,90 @@
+package com.aric.middleware.rpc;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.loadbalance.LoadBalanceFactory;
+import com.aric.middleware.rpc.network.ClientSocket;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.ServerDispatcher;
+import com.aric.middleware.rpc.network.ServerSocket;
+import com.aric.middleware.rpc.proxy.ConsumerBeanProxy;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试共用的服务端、连接和代理：服务端绑定系统分配的端口，同时运行的测试之间不会端口冲突
+ */
+public final class RpcTestSupport {
+    public static final String HOST = "127.0.0.1";
+    public static final int TIMEOUT = 5000;
+
+    private RpcTestSupport() {
+    }
+
+    public static ServerSocket startServer() {
+        return startServer(new ServerProperties());
+    }
+
+    /**
+     * 端口没有配置（为 0）时由系统分配，通过 ServerSocket.getPort() 取得实际端口
+     */
+    public static ServerSocket startServer(ServerProperties properties) {
+        ServerSocket server = new ServerSocket(properties, ServerDispatcher.create(properties));
+        server.start();
+        return server;
+    }
+
+    /**
+     * 当前没有被监听的端口，用于连接一定会失败的服务提供方
+     */
+    public static int freePort() {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ClientSocket client(ServerSocket server) throws InterruptedException {
+        return ClientTransport.getClient(HOST, server.getPort());
+    }
+
+    public static int methodId(ClientSocket client, Class<?> type, String name, Class<?>... parameterTypes) throws Exception {
+        return client.getMethodId(MethodDictionary.signature(type.getName(), type.getMethod(name, parameterTypes)));
+    }
+
+    public static ProviderConfig provider(Class<?> type, int port) {
+        ProviderConfig provider = new ProviderConfig();
+        provider.setNozzle(type.getName());
+        provider.setHost(HOST);
+        provider.setPort(port);
+        return provider;
+    }
+
+    /**
+     * @param local 进程内调用的模式，服务端在同一个 JVM 中时用 none 让请求经过网络
+     */
+    public static ConsumerBeanProxy handler(Class<?> type, String serializer, String local, int... ports) {
+        List<ProviderConfig> providers = new ArrayList<>();
+        for (int port : ports) {
+            providers.add(provider(type, port));
+        }
+        return new ConsumerBeanProxy(type.getName(), () -> providers, SerializerFactory.get(serializer),
+                LoadBalanceFactory.create(null), TIMEOUT, local);
+    }
+
+    public static <T> T proxy(Class<T> type, int port, String local) {
+        return proxy(type, handler(type, SerializerFactory.getDefault().getName(), local, port));
+    }
+
+    public static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
@@ -0,0 +1,148 @@
+package com.aric.middleware.rpc;
+
+import com.aric.middleware.rpc.network.Request;
+import com.aric.middleware.rpc.network.Response;
+import com.aric.middleware.rpc.serialize.Serializer;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各序列化方式对 Request / Response 的对比：序列化 + 反序列化一次的耗时，以及序列化后的字节数（main 中输出）
+ * 参数为一个字符串、一个数字和一个包含列表、Map 的对象
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    public static class Order {
+        private long orderId;
+        private CustomBean buyer;
+        private List<String> items = new ArrayList<>();
+        private Map<String, Integer> counts = new HashMap<>();
+
+        public long getOrderId() {
+            return orderId;
+        }
+
+        public void setOrderId(long orderId) {
+            this.orderId = orderId;
+        }
+
+        public CustomBean getBuyer() {
+            return buyer;
+        }
+
+        public void setBuyer(CustomBean buyer) {
+            this.buyer = buyer;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        public Map<String, Integer> getCounts() {
+            return counts;
+        }
+
+        public void setCounts(Map<String, Integer> counts) {
+            this.counts = counts;
+        }
+    }
+
+    @Param({"protostuff", "kryo", "json"})
+    public String serializer;
+
+    private Serializer instance;
+    private Request request;
+    private Response response;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        instance = SerializerFactory.get(serializer);
+        request = newRequest();
+        response = newResponse();
+        buf = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.release();
+    }
+
+    @Benchmark
+    public Object request() throws Exception {
+        return roundTrip(instance, request, Request.class, buf);
+    }
+
+    @Benchmark
+    public Object response() throws Exception {
+        return roundTrip(instance, response, Response.class, buf);
+    }
+
+    private static <T> T roundTrip(Serializer serializer, Object obj, Class<T> clzz, ByteBuf buf) throws Exception {
+        buf.clear();
+        serializer.serialize(obj, buf);
+        return serializer.deserialize(buf, buf.readableBytes(), clzz);
+    }
+
+    private static Order newOrder() {
+        Order order = new Order();
+        order.setOrderId(20240101123L);
+        order.setBuyer(new CustomBean("小明", 22));
+        for (int i = 0; i < 5; i++) {
+            order.getItems().add("item-" + i);
+            order.getCounts().put("item-" + i, i + 1);
+        }
+        return order;
+    }
+
+    private static Request newRequest() {
+        return new Request(0, (byte) 0, 0, new Object[]{"hello", 3, newOrder()});
+    }
+
+    private static Response newResponse() {
+        Response response = new Response();
+        response.setResult(newOrder());
+        return response;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        System.out.printf("%-12s %10s %10s%n", "serializer", "request", "response");
+        for (String name : new String[]{"protostuff", "kryo", "json"}) {
+            Serializer serializer = SerializerFactory.get(name);
+            buf.clear();
+            serializer.serialize(newRequest(), buf);
+            int requestSize = buf.readableBytes();
+            buf.clear();
+            serializer.serialize(newResponse(), buf);
+            System.out.printf("%-12s %9dB %9dB%n", name, requestSize, buf.readableBytes());
+        }
+        buf.release();
+
+        Options options = new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
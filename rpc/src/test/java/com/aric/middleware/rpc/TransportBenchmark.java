@@ -0,0 +1,108 @@
+package com.aric.middleware.rpc;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.aric.middleware.rpc.config.ProviderConfig;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.network.ClientSocket;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.Request;
+import com.aric.middleware.rpc.network.ServerDispatcher;
+import com.aric.middleware.rpc.network.ServerSocket;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一台机器上的两种传输方式对比（需要 Linux epoll）：
+ * tcp: 通过 127.0.0.1 的 TCP 连接
+ * uds: 通过 Unix domain socket 连接
+ * latency 是单线程同步调用的平均耗时，throughput 是多个线程同时调用时每毫秒完成的调用数
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+    private static final int PORT = 17900;
+    private static final String DOMAIN_SOCKET = "/tmp/rpc-transport-benchmark.sock";
+
+    public interface Greeting {
+        String say(String name);
+    }
+
+    public static class GreetingImpl implements Greeting {
+        @Override
+        public String say(String name) {
+            return name;
+        }
+    }
+
+    @Param({"tcp", "uds"})
+    private String transport;
+
+    private ServerSocket server;
+    private ClientSocket client;
+    private int methodId;
+
+    @Setup
+    public void setup() throws Exception {
+        // 每次调用的 INFO 日志会掩盖传输本身的差异
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        MethodDictionary.export(Greeting.class.getName(), new GreetingImpl());
+        server = new ServerSocket(PORT, DOMAIN_SOCKET, ServerDispatcher.create(new ServerProperties()));
+        server.start();
+
+        ProviderConfig provider = new ProviderConfig();
+        provider.setHost("127.0.0.1");
+        provider.setPort(PORT);
+        if ("uds".equals(transport)) {
+            provider.setDomainSocket(DOMAIN_SOCKET);
+        }
+        client = ClientTransport.getClient(provider);
+        if ("uds".equals(transport) != client.getAddress() instanceof DomainSocketAddress) {
+            throw new IllegalStateException("没有使用预期的传输方式: " + client.getAddress());
+        }
+        methodId = client.getMethodId(MethodDictionary.signature(Greeting.class.getName(), Greeting.class.getMethod("say", String.class)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object latency() throws Exception {
+        return call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(16)
+    public Object throughput() throws Exception {
+        return call();
+    }
+
+    private Object call() throws Exception {
+        Request request = new Request(methodId, SerializerFactory.getDefault().getId(), 0, new Object[]{"小明"});
+        return client.writeMessage(request).getResult();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(TransportBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,64 @@
+package com.aric.middleware.rpc.loadbalance;
+
+import com.aric.middleware.rpc.config.ProviderConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class P2CLoadBalanceTest {
+
+    @Test
+    public void test_coldProviderCountsActive() {
+        ProviderConfig warm = provider(18001);
+        ProviderConfig cold = provider(18002);
+        ProviderStats warmStats = ProviderStats.get(warm);
+        warmStats.end(warmStats.begin() - TimeUnit.MILLISECONDS.toNanos(1), true);
+        // 新上线的服务提供方还没有响应返回，已经有 5 个在途请求
+        for (int i = 0; i < 5; i++) {
+            ProviderStats.get(cold).begin();
+        }
+
+        P2CLoadBalance loadBalance = new P2CLoadBalance();
+        for (int i = 0; i < 100; i++) {
+            assertSame(warm, loadBalance.select(List.of(warm, cold)));
+        }
+    }
+
+    @Test
+    public void test_bothColdPreferLessActive() {
+        ProviderConfig idle = provider(18003);
+        ProviderConfig busy = provider(18004);
+        ProviderStats.get(busy).begin();
+
+        P2CLoadBalance loadBalance = new P2CLoadBalance();
+        for (int i = 0; i < 100; i++) {
+            assertSame(idle, loadBalance.select(List.of(idle, busy)));
+        }
+    }
+
+    @Test
+    public void test_fastFailureShedsTraffic() {
+        ProviderConfig healthy = provider(18005);
+        ProviderConfig failing = provider(18006);
+        ProviderStats healthyStats = ProviderStats.get(healthy);
+        healthyStats.end(healthyStats.begin() - TimeUnit.MILLISECONDS.toNanos(20), true);
+        // 连接失败、繁忙、过载时请求立即返回，不能因此被当成最快的服务提供方
+        ProviderStats failingStats = ProviderStats.get(failing);
+        failingStats.end(failingStats.begin(), false);
+
+        P2CLoadBalance loadBalance = new P2CLoadBalance();
+        for (int i = 0; i < 100; i++) {
+            assertSame(healthy, loadBalance.select(List.of(healthy, failing)));
+        }
+    }
+
+    private static ProviderConfig provider(int port) {
+        ProviderConfig provider = new ProviderConfig();
+        provider.setHost("127.0.0.1");
+        provider.setPort(port);
+        return provider;
+    }
+}
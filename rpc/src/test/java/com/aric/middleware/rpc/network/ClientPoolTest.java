@@ -0,0 +1,64 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.config.ServerProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 服务提供方下线后，没有调用使用的连接池重连若干次就放弃并被移除，不会在进程的整个生命周期里一直重连
+ */
+public class ClientPoolTest {
+    @BeforeAll
+    public static void setup() {
+        ServerProperties client = new ServerProperties();
+        client.setClientPoolSize(1);
+        client.setReconnectBackoff(10);
+        client.setReconnectMaxBackoff(20);
+        client.setReconnectMaxAttempts(3);
+        ClientTransport.shutdown();
+        ClientTransport.init(client);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        ClientTransport.init(new ServerProperties());
+    }
+
+    @Test
+    public void test_removeIdlePoolOfGoneProvider() throws Exception {
+        ServerSocket server = RpcTestSupport.startServer();
+        String key = RpcTestSupport.HOST + ":" + server.getPort();
+        ClientSocket client = RpcTestSupport.client(server);
+        ClientPool pool = ClientTransport.getPools().get(key);
+        assertTrue(client.isReady());
+
+        // 服务端下线，已经建立的连接随之断开，之后的重连都会被拒绝
+        server.close();
+        client.getChannel().close();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ClientTransport.getPools().containsKey(key)) {
+            assertTrue(System.nanoTime() < deadline, "连接池没有被移除");
+            Thread.sleep(10);
+        }
+
+        // 服务端在同一个端口重新上线后，新的调用会重新创建连接池
+        ServerProperties properties = new ServerProperties();
+        properties.setPort(server.getPort());
+        server = RpcTestSupport.startServer(properties);
+        try {
+            assertTrue(RpcTestSupport.client(server).isReady());
+            assertNotSame(pool, ClientTransport.getPools().get(key));
+        } finally {
+            server.close();
+        }
+    }
+}
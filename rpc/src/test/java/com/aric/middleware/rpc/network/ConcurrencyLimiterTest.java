@@ -0,0 +1,65 @@
+package com.aric.middleware.rpc.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyLimiterTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void test_rejectOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10);
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCount());
+
+        first.release(false);
+        assertEquals(1, limiter.getInflight());
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void test_growWhileLatencyIsFlat() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1000);
+        for (int i = 0; i < 50; i++) {
+            limiter.update(RTT, limiter.getLimit(), false);
+        }
+        assertTrue(limiter.getLimit() > 20, "limit=" + limiter.getLimit());
+    }
+
+    @Test
+    public void test_shrinkWhenQueueing() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1000);
+        limiter.update(RTT, 100, false);
+        // 响应时间变为空载时的 3 倍，说明有大量请求在排队
+        for (int i = 0; i < 100; i++) {
+            limiter.update(3 * RTT, limiter.getLimit(), false);
+        }
+        assertTrue(limiter.getLimit() < 50, "limit=" + limiter.getLimit());
+    }
+
+    @Test
+    public void test_keepLimitWhenUnderused() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1000);
+        limiter.update(RTT, 100, false);
+        for (int i = 0; i < 50; i++) {
+            limiter.update(3 * RTT, 10, false);
+        }
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    public void test_shrinkOnDrop() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1000);
+        limiter.update(0, 100, true);
+        assertEquals(98, limiter.getLimit());
+    }
+}
@@ -0,0 +1,92 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.serialize.KryoSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 帧体无法反序列化（类型不在白名单中）时只让对应的请求立即失败，连接和同一条连接上的其他请求不受影响
+ */
+public class DecodeFailureTest {
+    public interface Shapes {
+        Object area(Object shape);
+    }
+
+    public static class ShapesImpl implements Shapes {
+        @Override
+        public Object area(Object shape) {
+            if ("rectangle".equals(shape)) {
+                // java.awt.Rectangle 不在反序列化白名单中
+                return new Rectangle(1, 2, 3, 4);
+            }
+            return shape;
+        }
+    }
+
+    private static ServerSocket server;
+    private static ClientSocket client;
+    private static int methodId;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Shapes.class.getName(), new ShapesImpl());
+        ServerProperties properties = new ServerProperties();
+        properties.setSerializers("protostuff,kryo");
+        server = RpcTestSupport.startServer(properties);
+        client = RpcTestSupport.client(server);
+        methodId = RpcTestSupport.methodId(client, Shapes.class, "area", Object.class);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void test_undecodableResponseFailsOnlyItsCall() throws Exception {
+        CompletableFuture<Response> bad = call("rectangle");
+        // 立即失败，不等待 10 秒的超时
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(2, TimeUnit.SECONDS));
+        assertSerializeError(e);
+
+        assertTrue(client.isReady());
+        assertEquals("circle", call("circle").get(2, TimeUnit.SECONDS).getResult());
+    }
+
+    @Test
+    public void test_undecodableRequestFailsOnlyItsCall() throws Exception {
+        CompletableFuture<Response> bad = call(new Rectangle(1, 2, 3, 4));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(2, TimeUnit.SECONDS));
+        assertSerializeError(e);
+
+        // 服务端没有关闭共用的连接
+        assertTrue(client.isReady());
+        assertEquals("square", call("square").get(2, TimeUnit.SECONDS).getResult());
+    }
+
+    private static void assertSerializeError(ExecutionException e) {
+        RpcException cause = assertInstanceOf(RpcException.class, e.getCause());
+        assertEquals(RpcErrorCode.SERIALIZE_ERROR.getCode(), cause.getCode());
+        assertTrue(cause.getMessage().contains("java.awt.Rectangle"), cause.getMessage());
+    }
+
+    private static CompletableFuture<Response> call(Object shape) {
+        return client.writeMessageAsync(new Request(methodId, KryoSerializer.ID, 10000, new Object[]{shape}));
+    }
+}
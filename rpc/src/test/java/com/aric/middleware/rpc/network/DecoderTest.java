@@ -0,0 +1,118 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.serialize.JsonSerializer;
+import com.aric.middleware.rpc.serialize.ProtostuffSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecoderTest {
+
+    @Test
+    public void test_rejectDisabledSerializer() {
+        EmbeddedChannel server = new EmbeddedChannel(new Decoder(Collections.singletonList((int) ProtostuffSerializer.ID)));
+
+        assertTrue(server.writeInbound(encode(new Request(0, ProtostuffSerializer.ID, 0, new Object[]{"a"}))));
+        assertEquals("a", ((Request) server.readInbound()).getArgs()[0]);
+        // 握手帧和心跳帧不受限制
+        assertTrue(server.writeInbound(encode(new Handshake())));
+        assertTrue(server.writeInbound(encode(Heartbeat.PING)));
+        server.inboundMessages().clear();
+
+        // 没有开启的序列化方式只让这个请求失败，不断开连接
+        assertTrue(server.writeInbound(encode(new Request(0, JsonSerializer.ID, 0, new Object[]{"a"}).withRequestId(5))));
+        DecodeFailure failure = server.readInbound();
+        assertEquals(Protocol.TYPE_REQUEST, failure.getType());
+        assertEquals(5, failure.getRequestId());
+        assertTrue(server.isOpen());
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void test_undecodableBodyKeepsConnection() {
+        EmbeddedChannel client = new EmbeddedChannel(new Decoder());
+        byte[] body = "not json".getBytes();
+        ByteBuf frame = Unpooled.buffer()
+                .writeInt(Protocol.HEADER_LENGTH + body.length)
+                .writeShort(Protocol.MAGIC).writeByte(Protocol.VERSION).writeByte(Protocol.TYPE_RESPONSE)
+                .writeByte(0).writeByte(JsonSerializer.ID).writeInt(7).writeInt(0)
+                .writeBytes(body);
+        assertTrue(client.writeInbound(frame));
+        DecodeFailure failure = client.readInbound();
+        assertEquals(Protocol.TYPE_RESPONSE, failure.getType());
+        assertEquals(7, failure.getRequestId());
+        assertTrue(client.isOpen());
+
+        // 后面的帧照常解析
+        assertTrue(client.writeInbound(encode(Heartbeat.PONG)));
+        assertEquals(Heartbeat.PONG, client.readInbound());
+
+        // 握手无法单独失败，仍然断开连接
+        ByteBuf handshake = Unpooled.buffer()
+                .writeInt(Protocol.HEADER_LENGTH + body.length)
+                .writeShort(Protocol.MAGIC).writeByte(Protocol.VERSION).writeByte(Protocol.TYPE_HANDSHAKE)
+                .writeByte(0).writeByte(JsonSerializer.ID).writeInt(0).writeInt(0)
+                .writeBytes(body);
+        assertThrows(DecoderException.class, () -> client.writeInbound(handshake));
+        client.finishAndReleaseAll();
+    }
+
+    @Test
+    public void test_clientAcceptsAllSerializers() {
+        EmbeddedChannel client = new EmbeddedChannel(new Decoder());
+        assertTrue(client.writeInbound(encode(new Request(0, JsonSerializer.ID, 0, new Object[]{"a"}))));
+        assertFalse(client.inboundMessages().isEmpty());
+        client.finishAndReleaseAll();
+    }
+
+    @Test
+    public void test_rejectLengthShorterThanHeader() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Decoder());
+        ByteBuf negative = Unpooled.buffer().writeInt(-100).writeZero(32);
+        assertThrows(CorruptedFrameException.class, () -> channel.writeInbound(negative));
+        assertFalse(channel.isOpen());
+
+        // 带 FLAG_DEADLINE 时帧头多 4 个字节
+        EmbeddedChannel deadline = new EmbeddedChannel(new Decoder());
+        ByteBuf frame = Unpooled.buffer()
+                .writeInt(Protocol.HEADER_LENGTH)
+                .writeShort(Protocol.MAGIC).writeByte(Protocol.VERSION).writeByte(Protocol.TYPE_REQUEST)
+                .writeByte(Protocol.FLAG_DEADLINE).writeByte(ProtostuffSerializer.ID).writeInt(1).writeInt(0)
+                .writeInt(1000);
+        assertThrows(CorruptedFrameException.class, () -> deadline.writeInbound(frame));
+        assertFalse(deadline.isOpen());
+    }
+
+    @Test
+    public void test_rejectTooLongFrame() {
+        EmbeddedChannel channel = new EmbeddedChannel(new Decoder(1024, null));
+        // 只收到长度字段就拒绝，不等待帧体
+        ByteBuf header = Unpooled.buffer().writeInt(1025);
+        assertThrows(TooLongFrameException.class, () -> channel.writeInbound(header));
+        assertFalse(channel.isOpen());
+
+        EmbeddedChannel normal = new EmbeddedChannel(new Decoder(1024, null));
+        assertTrue(normal.writeInbound(encode(new Request(0, ProtostuffSerializer.ID, 1000, new Object[]{"a"}))));
+        assertTrue(((Request) normal.readInbound()).getDeadline() > 0);
+        normal.finishAndReleaseAll();
+    }
+
+    static ByteBuf encode(Object msg) {
+        EmbeddedChannel channel = new EmbeddedChannel(new Encoder());
+        channel.writeOutbound(msg);
+        ByteBuf buf = channel.readOutbound();
+        channel.finishAndReleaseAll();
+        return buf;
+    }
+}
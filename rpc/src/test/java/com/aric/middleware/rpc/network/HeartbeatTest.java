@@ -0,0 +1,287 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 心跳和空闲检测：客户端和服务端之间隔着一个可以冻结、切断连接的 TCP 中继
+ * 冻结时中继丢弃两个方向的数据但不关闭连接，模拟对端宕机后的半开连接
+ */
+public class HeartbeatTest {
+    public interface Clock {
+        String now(String tag);
+
+        String slow(String tag);
+    }
+
+    public static class ClockImpl implements Clock {
+        @Override
+        public String now(String tag) {
+            return "now-" + tag;
+        }
+
+        @Override
+        public String slow(String tag) {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow-" + tag;
+        }
+    }
+
+    private static ServerSocket server;
+    private static Relay relay;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Clock.class.getName(), new ClockImpl());
+        server = RpcTestSupport.startServer();
+        relay = new Relay(server.getPort());
+
+        // 客户端 100ms 没有读到数据就发送心跳，300ms 没有读到数据就关闭连接
+        ServerProperties client = new ServerProperties();
+        client.setClientPoolSize(1);
+        client.setHeartbeatInterval(100);
+        client.setHeartbeatTimeout(300);
+        client.setReconnectBackoff(50);
+        ClientTransport.shutdown();
+        ClientTransport.init(client);
+    }
+
+    @AfterAll
+    public static void tearDown() throws IOException {
+        ClientTransport.shutdown();
+        ClientTransport.init(new ServerProperties());
+        relay.close();
+        server.close();
+    }
+
+    @Test
+    public void test_answerPing() {
+        EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler());
+        channel.writeInbound(Heartbeat.PING);
+        assertSame(Heartbeat.PONG, channel.readOutbound());
+        // 心跳帧不向后传递
+        channel.writeInbound(Heartbeat.PONG);
+        assertNull(channel.readInbound());
+        channel.writeInbound("message");
+        assertEquals("message", channel.readInbound());
+    }
+
+    @Test
+    public void test_idleEvents() {
+        // 客户端：连续 3 次读空闲才关闭，之前每次都发送 PING
+        EmbeddedChannel client = new EmbeddedChannel(new HeartbeatHandler(3));
+        client.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        assertSame(Heartbeat.PING, client.readOutbound());
+        client.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        assertSame(Heartbeat.PING, client.readOutbound());
+        // 读到数据后重新计数
+        client.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        client.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        assertTrue(client.isOpen());
+        client.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+        assertFalse(client.isOpen());
+
+        // 服务端：写空闲不处理，第一次读空闲就关闭
+        EmbeddedChannel server = new EmbeddedChannel(new HeartbeatHandler());
+        server.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_WRITER_IDLE_STATE_EVENT);
+        assertNull(server.readOutbound());
+        server.pipeline().fireUserEventTriggered(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT);
+        assertNull(server.readOutbound());
+        assertFalse(server.isOpen());
+    }
+
+    @Test
+    public void test_heartbeatKeepsIdleConnection() throws Exception {
+        ClientSocket client = ready();
+        int accepted = relay.accepted.get();
+        // 空闲时间远超过 heartbeatTimeout，心跳让连接保持可用
+        Thread.sleep(1000);
+        assertTrue(client.isReady());
+        assertEquals(accepted, relay.accepted.get());
+        assertEquals("now-idle", call(client, "now", "idle").get(1, TimeUnit.SECONDS).getResult());
+    }
+
+    @Test
+    public void test_busyWriterKeepsConnection() throws Exception {
+        ClientSocket client = ready();
+        int accepted = relay.accepted.get();
+        // 客户端一直在写出，但服务端一直没有数据返回（PONG 不需要回复），心跳仍然要按读空闲发送
+        for (int i = 0; i < 20; i++) {
+            client.getChannel().writeAndFlush(Heartbeat.PONG);
+            Thread.sleep(50);
+        }
+        assertTrue(client.isReady());
+        assertEquals(accepted, relay.accepted.get());
+    }
+
+    @Test
+    public void test_halfOpenFailsFastAndReconnects() throws Exception {
+        ClientSocket client = ready();
+        int accepted = relay.accepted.get();
+
+        // 连接没有断开，但是对端不再有任何数据返回
+        relay.freeze();
+        CompletableFuture<Response> inFlight = call(client, "now", "frozen");
+        long start = System.currentTimeMillis();
+        // 读空闲关闭连接，在途请求立即失败，不用等到 10 秒的超时
+        assertThrows(ExecutionException.class, () -> inFlight.get(3, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 3000);
+
+        // 连接池在后台重新连接，不需要新的调用触发
+        awaitTrue(() -> relay.accepted.get() > accepted && client.isReady());
+        assertEquals("now-after", call(client, "now", "after").get(1, TimeUnit.SECONDS).getResult());
+    }
+
+    @Test
+    public void test_closedConnectionFailsFastAndReconnects() throws Exception {
+        ClientSocket client = ready();
+        int accepted = relay.accepted.get();
+
+        CompletableFuture<Response> inFlight = call(client, "slow", "cut");
+        Thread.sleep(100);
+        relay.cut();
+        assertThrows(ExecutionException.class, () -> inFlight.get(1, TimeUnit.SECONDS));
+
+        awaitTrue(() -> relay.accepted.get() > accepted && client.isReady());
+        assertEquals("now-after", call(client, "now", "after").get(1, TimeUnit.SECONDS).getResult());
+    }
+
+    private static ClientSocket ready() throws Exception {
+        ClientSocket client = ClientTransport.getClient(RpcTestSupport.HOST, relay.getPort());
+        awaitTrue(client::isReady);
+        return client;
+    }
+
+    private static CompletableFuture<Response> call(ClientSocket client, String method, String tag) throws Exception {
+        int methodId = RpcTestSupport.methodId(client, Clock.class, method, String.class);
+        return client.writeMessageAsync(new Request(methodId, SerializerFactory.getDefault().getId(), 10000, new Object[]{tag}));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 在系统分配的端口上监听，把连接转发到 target，freeze 之后已有的连接丢弃所有数据，新的连接正常转发
+     */
+    private static class Relay {
+        private final java.net.ServerSocket listener;
+        private final List<Link> links = new CopyOnWriteArrayList<>();
+        private final AtomicInteger accepted = new AtomicInteger();
+
+        Relay(int target) throws IOException {
+            listener = new java.net.ServerSocket(0);
+            Thread acceptor = new Thread(() -> {
+                while (!listener.isClosed()) {
+                    try {
+                        Socket client = listener.accept();
+                        Link link = new Link(client, new Socket(RpcTestSupport.HOST, target));
+                        links.add(link);
+                        accepted.incrementAndGet();
+                        link.start();
+                    } catch (IOException e) {
+                        // 关闭时退出
+                    }
+                }
+            }, "relay-" + target);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return listener.getLocalPort();
+        }
+
+        void freeze() {
+            links.forEach(link -> link.frozen = true);
+        }
+
+        void cut() {
+            links.forEach(Link::close);
+            links.clear();
+        }
+
+        void close() throws IOException {
+            listener.close();
+            cut();
+        }
+    }
+
+    private static class Link {
+        private final Socket client;
+        private final Socket server;
+        private volatile boolean frozen;
+
+        Link(Socket client, Socket server) {
+            this.client = client;
+            this.server = server;
+        }
+
+        void start() throws IOException {
+            pump(client.getInputStream(), server.getOutputStream());
+            pump(server.getInputStream(), client.getOutputStream());
+        }
+
+        private void pump(InputStream in, OutputStream out) {
+            Thread thread = new Thread(() -> {
+                byte[] buf = new byte[8192];
+                try {
+                    int n;
+                    while ((n = in.read(buf)) >= 0) {
+                        if (!frozen) {
+                            out.write(buf, 0, n);
+                            out.flush();
+                        }
+                    }
+                } catch (IOException ignore) {
+                    // 任意一端关闭
+                }
+                close();
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void close() {
+            try {
+                client.close();
+                server.close();
+            } catch (IOException ignore) {
+                // 已经关闭
+            }
+        }
+    }
+}
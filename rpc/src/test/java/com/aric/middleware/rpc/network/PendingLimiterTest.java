@@ -0,0 +1,127 @@
+package com.aric.middleware.rpc.network;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PendingLimiterTest {
+
+    @Test
+    public void test_waitUntilReleased() {
+        PendingLimiter limiter = new PendingLimiter(2, PendingLimiter.POLICY_WAIT);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        CompletableFuture<Object> third = new CompletableFuture<>();
+
+        assertTrue(limiter.submit(channel, first, sent::incrementAndGet));
+        assertTrue(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertTrue(limiter.submit(channel, third, sent::incrementAndGet));
+        assertEquals(2, sent.get());
+        assertEquals(2, limiter.getPending());
+        assertEquals(1, limiter.getWaiting());
+
+        first.complete(null);
+        assertEquals(3, sent.get());
+        assertEquals(2, limiter.getPending());
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(1, limiter.getWaitedCount());
+    }
+
+    @Test
+    public void test_failFast() {
+        PendingLimiter limiter = new PendingLimiter(1, PendingLimiter.POLICY_FAIL);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger sent = new AtomicInteger();
+
+        assertTrue(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertFalse(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertEquals(1, sent.get());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void test_skipExpiredWaiter() {
+        PendingLimiter limiter = new PendingLimiter(2, PendingLimiter.POLICY_WAIT);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        CompletableFuture<Object> expired = new CompletableFuture<>();
+
+        limiter.submit(channel, first, sent::incrementAndGet);
+        limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet);
+        limiter.submit(channel, expired, sent::incrementAndGet);
+        limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet);
+        // 等待中超时的请求不再发出
+        expired.completeExceptionally(new RuntimeException("timeout"));
+        first.complete(null);
+
+        assertEquals(3, sent.get());
+        assertEquals(2, limiter.getPending());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void test_expiredWaiterReleasesSlot() {
+        PendingLimiter limiter = new PendingLimiter(1, PendingLimiter.POLICY_WAIT);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Object> expired = new CompletableFuture<>();
+
+        assertTrue(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertTrue(limiter.submit(channel, expired, sent::incrementAndGet));
+        assertFalse(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+
+        // 超时的请求立即让出等待队列的名额，后面的请求不会因此被拒绝
+        expired.completeExceptionally(new RuntimeException("timeout"));
+        assertEquals(0, limiter.getWaiting());
+        assertTrue(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertEquals(1, limiter.getWaiting());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void test_failWaitersWhenInactive() {
+        PendingLimiter limiter = new PendingLimiter(1, PendingLimiter.POLICY_WAIT);
+        EmbeddedChannel channel = new EmbeddedChannel(new ClientHandler(limiter));
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Object> waiter = new CompletableFuture<>();
+
+        limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet);
+        limiter.submit(channel, waiter, sent::incrementAndGet);
+        assertEquals(1, limiter.getWaiting());
+
+        // 连接断开时等待中的请求立即失败，不再等到超时
+        channel.close();
+        assertTrue(waiter.isCompletedExceptionally());
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void test_waitWhileUnwritable() {
+        PendingLimiter limiter = new PendingLimiter(10, PendingLimiter.POLICY_WAIT);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8, 16));
+        // 写入但不 flush，写缓冲超过高水位
+        channel.write(new byte[32]);
+        assertFalse(channel.isWritable());
+
+        AtomicInteger sent = new AtomicInteger();
+        assertTrue(limiter.submit(channel, new CompletableFuture<>(), sent::incrementAndGet));
+        assertEquals(0, sent.get());
+
+        channel.flush();
+        assertTrue(channel.isWritable());
+        limiter.drain(channel);
+        assertEquals(1, sent.get());
+    }
+}
@@ -0,0 +1,229 @@
+package com.aric.middleware.rpc.network;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式调用经过真实的连接：服务端只读取客户端授予额度之内的结果，客户端取消后服务端关闭结果的迭代器
+ */
+public class StreamTest {
+    private static final int TOTAL = 1000;
+
+    public interface Counter {
+        Iterator<Integer> count(int total);
+    }
+
+    /**
+     * 记录服务端实际读取了多少条结果，以及是否被关闭
+     */
+    public static class CountingIterator implements Iterator<Integer>, AutoCloseable {
+        private final int total;
+        private final AtomicInteger produced = new AtomicInteger();
+        private volatile boolean closed;
+
+        CountingIterator(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return produced.get() < total;
+        }
+
+        @Override
+        public Integer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return produced.getAndIncrement();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    public static class CounterImpl implements Counter {
+        @Override
+        public Iterator<Integer> count(int total) {
+            CountingIterator iterator = new CountingIterator(total);
+            last.set(iterator);
+            return iterator;
+        }
+    }
+
+    private static final AtomicReference<CountingIterator> last = new AtomicReference<>();
+
+    private static ServerSocket server;
+    private static ClientSocket client;
+    private static int methodId;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Counter.class.getName(), new CounterImpl());
+        server = RpcTestSupport.startServer();
+        client = RpcTestSupport.client(server);
+        methodId = RpcTestSupport.methodId(client, Counter.class, "count", int.class);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void test_iteratorWindow() throws Exception {
+        StreamIterator iterator = client.openStream(request(TOTAL));
+        CountingIterator source = await(last::get);
+
+        // 没有消费时服务端只读取一个窗口的结果
+        awaitTrue(() -> source.produced.get() >= StreamIterator.DEFAULT_WINDOW);
+        Thread.sleep(200);
+        assertEquals(StreamIterator.DEFAULT_WINDOW, source.produced.get());
+
+        // 边消费边补充额度，直到全部读完
+        int expected = 0;
+        while (iterator.hasNext()) {
+            assertEquals(expected++, iterator.next());
+        }
+        assertEquals(TOTAL, expected);
+        assertEquals(TOTAL, source.produced.get());
+        awaitTrue(() -> source.closed);
+    }
+
+    @Test
+    public void test_publisherCredit() throws Exception {
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        AtomicInteger received = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        client.openPublisher(request(TOTAL)).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(10);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        CountingIterator source = await(last::get);
+
+        // 额度用完后服务端停止读取
+        awaitTrue(() -> received.get() == 10);
+        Thread.sleep(200);
+        assertEquals(10, received.get());
+        assertEquals(10, source.produced.get());
+
+        // 补充额度后继续发送
+        subscription.get().request(20);
+        awaitTrue(() -> received.get() == 30);
+        Thread.sleep(200);
+        assertEquals(30, received.get());
+        assertEquals(30, source.produced.get());
+
+        // 取消后服务端关闭迭代器，不再读取
+        subscription.get().cancel();
+        awaitTrue(() -> source.closed);
+        assertEquals(30, source.produced.get());
+        assertNull(error.get());
+    }
+
+    @Test
+    public void test_publisherExactCredit() throws Exception {
+        // 额度正好等于结果数量时，最后一批结果之后立即完成，不需要再多要一条
+        for (int total : new int[]{1, 10, 64, 128}) {
+            AtomicInteger received = new AtomicInteger();
+            CompletableFuture<Void> completed = new CompletableFuture<>();
+            client.openPublisher(request(total)).subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    s.request(total);
+                }
+
+                @Override
+                public void onNext(Object item) {
+                    received.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            completed.get(5, TimeUnit.SECONDS);
+            assertEquals(total, received.get());
+            awaitTrue(() -> last.get().closed);
+        }
+    }
+
+    @Test
+    public void test_cancelMidStream() throws Exception {
+        StreamIterator iterator = client.openStream(request(TOTAL));
+        CountingIterator source = await(last::get);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, iterator.next());
+        }
+        assertFalse(source.closed);
+
+        // 没有读完就关闭，服务端收到 CANCEL 后关闭迭代器，停在已授予的窗口内
+        iterator.close();
+        awaitTrue(() -> source.closed);
+        Thread.sleep(200);
+        assertEquals(StreamIterator.DEFAULT_WINDOW, source.produced.get());
+        assertFalse(iterator.hasNext());
+    }
+
+    private static Request request(int total) {
+        last.set(null);
+        return new Request(methodId, SerializerFactory.getDefault().getId(), 0, new Object[]{total});
+    }
+
+    private static <T> T await(Supplier<T> supplier) throws InterruptedException {
+        awaitTrue(() -> null != supplier.get());
+        return supplier.get();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
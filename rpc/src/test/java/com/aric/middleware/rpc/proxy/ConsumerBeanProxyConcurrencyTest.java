@@ -0,0 +1,162 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.config.ServerProperties;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.ServerSocket;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多个线程同时通过同一个代理对象调用，每个响应都必须回到发起它的调用上
+ * 服务端随机延迟一小段时间，让同一条连接上的响应乱序返回
+ */
+public class ConsumerBeanProxyConcurrencyTest {
+    private static final int THREADS = 32;
+    private static final int CALLS = 500;
+    private static final int WINDOW = 50;
+
+    public interface Echo {
+        String echo(String value);
+
+        CompletableFuture<Long> square(long value);
+    }
+
+    public static class EchoImpl implements Echo {
+        @Override
+        public String echo(String value) {
+            pause();
+            return value;
+        }
+
+        @Override
+        public CompletableFuture<Long> square(long value) {
+            pause();
+            return CompletableFuture.completedFuture(value * value);
+        }
+
+        private static void pause() {
+            if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private static ServerSocket server;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Echo.class.getName(), new EchoImpl());
+        ServerProperties properties = new ServerProperties();
+        properties.setSerializers("protostuff,kryo,json");
+        server = RpcTestSupport.startServer(properties);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void test_responsesMatchCallers() throws Exception {
+        for (String serializer : new String[]{"protostuff", "kryo", "json"}) {
+            Echo echo = proxy(serializer);
+            ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+            AtomicInteger completed = new AtomicInteger();
+            run(index -> {
+                for (int i = 0; i < CALLS; i++) {
+                    String value = serializer + "-" + index + "-" + i;
+                    String result = echo.echo(value);
+                    if (!value.equals(result)) {
+                        errors.add(value + " -> " + result);
+                    }
+                    long number = (long) index * CALLS + i;
+                    long square = echo.square(number).get(5, TimeUnit.SECONDS);
+                    if (square != number * number) {
+                        errors.add(number + " -> " + square);
+                    }
+                    completed.incrementAndGet();
+                }
+            });
+            assertTrue(errors.isEmpty(), serializer + " 响应错位: " + errors.stream().limit(5).toList());
+            assertEquals(THREADS * CALLS, completed.get(), serializer);
+        }
+    }
+
+    @Test
+    public void test_asyncCallsInFlight() throws Exception {
+        Echo echo = proxy(SerializerFactory.getDefault().getName());
+        ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        run(index -> {
+            // 每个线程同时保持 WINDOW 个在途的异步调用，总数不超过连接的在途请求上限
+            for (int from = 0; from < CALLS; from += WINDOW) {
+                List<CompletableFuture<Long>> futures = new ArrayList<>();
+                for (int i = from; i < from + WINDOW; i++) {
+                    futures.add(echo.square((long) index * CALLS + i));
+                }
+                for (int i = from; i < from + WINDOW; i++) {
+                    long number = (long) index * CALLS + i;
+                    long square = futures.get(i - from).get(5, TimeUnit.SECONDS);
+                    if (square != number * number) {
+                        errors.add(number + " -> " + square);
+                    }
+                }
+            }
+        });
+        assertTrue(errors.isEmpty(), "响应错位: " + errors.stream().limit(5).toList());
+    }
+
+    private static Echo proxy(String serializer) {
+        // 服务端在同一个 JVM 中，关闭进程内调用，让请求经过网络
+        return RpcTestSupport.proxy(Echo.class, RpcTestSupport.handler(Echo.class, serializer, LocalInvoker.MODE_NONE, server.getPort()));
+    }
+
+    private static void run(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int index = t;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                    task.run(index);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, executor));
+        }
+        start.countDown();
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Task {
+        void run(int index) throws Exception;
+    }
+}
@@ -0,0 +1,78 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.ServerSocket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 代理方法按声明的返回值类型决定同步还是异步返回
+ */
+public class ConsumerBeanProxyTest {
+    public interface Lookup {
+        Object find(String key);
+
+        CompletableFuture<String> findAsync(String key);
+
+        CompletionStage<String> findStage(String key);
+    }
+
+    public static class LookupImpl implements Lookup {
+        @Override
+        public Object find(String key) {
+            return "value-" + key;
+        }
+
+        @Override
+        public CompletableFuture<String> findAsync(String key) {
+            return CompletableFuture.completedFuture("async-" + key);
+        }
+
+        @Override
+        public CompletionStage<String> findStage(String key) {
+            return CompletableFuture.completedFuture("stage-" + key);
+        }
+    }
+
+    private static ServerSocket server;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Lookup.class.getName(), new LookupImpl());
+        server = RpcTestSupport.startServer();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void test_objectReturnTypeIsSync() {
+        // 返回值声明为 Object 的方法是同步方法，返回结果本身而不是 CompletableFuture
+        for (String local : new String[]{LocalInvoker.MODE_NONE, LocalInvoker.MODE_DIRECT}) {
+            assertEquals("value-a", proxy(local).find("a"), local);
+        }
+    }
+
+    @Test
+    public void test_futureReturnTypes() throws Exception {
+        Lookup lookup = proxy(LocalInvoker.MODE_NONE);
+        assertEquals("async-b", lookup.findAsync("b").get(5, TimeUnit.SECONDS));
+        assertEquals("stage-c", lookup.findStage("c").toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    private static Lookup proxy(String local) {
+        return RpcTestSupport.proxy(Lookup.class, server.getPort(), local);
+    }
+}
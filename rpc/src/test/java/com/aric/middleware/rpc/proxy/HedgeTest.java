@@ -0,0 +1,129 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.annotation.RpcMethod;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.ServerSocket;
+import com.aric.middleware.rpc.serialize.SerializerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对冲经过真实的连接：两个服务提供方，同一个参数第一次到达的请求（原请求）变慢，后到达的对冲请求立即返回
+ */
+public class HedgeTest {
+    private static final int WARMUP = 40;
+
+    public interface Quote {
+        @RpcMethod(hedge = true, hedgePercentile = 50, hedgeBudget = 100)
+        String price(String key);
+
+        @RpcMethod(hedge = true, hedgePercentile = 50, hedgeBudget = 10)
+        String limited(String key);
+    }
+
+    public static class QuoteImpl implements Quote {
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String price(String key) {
+            return answer(key, 1000);
+        }
+
+        @Override
+        public String limited(String key) {
+            return answer(key, 20);
+        }
+
+        private String answer(String key, long slowMillis) {
+            if (key.startsWith("slow-") && seen.add(key)) {
+                try {
+                    Thread.sleep(slowMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "quote-" + key;
+        }
+    }
+
+    private static final ServerSocket[] servers = new ServerSocket[2];
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Quote.class.getName(), new QuoteImpl());
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = RpcTestSupport.startServer();
+        }
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void test_hedgeWinsOverSlowPrimary() throws Exception {
+        ConsumerBeanProxy handler = handler();
+        Quote quote = RpcTestSupport.proxy(Quote.class, handler);
+        HedgePolicy policy = handler.getHedgePolicy(Quote.class.getMethod("price", String.class));
+        assertNotNull(policy);
+
+        // 样本不足时不对冲
+        for (int i = 0; i < WARMUP; i++) {
+            assertEquals("quote-warm-" + i, quote.price("warm-" + i));
+        }
+        assertTrue(policy.getDelayMillis() > 0);
+        long hedged = policy.getHedgedCount();
+        long wins = policy.getWinCount();
+
+        // 原请求要 1 秒，对冲请求发往另一个服务提供方，先返回
+        long start = System.currentTimeMillis();
+        assertEquals("quote-slow-1", quote.price("slow-1"));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed < 500, "对冲没有生效, 耗时: " + elapsed);
+        assertTrue(policy.getHedgedCount() > hedged, "没有发出对冲请求");
+        // 先完成结果再记录胜出次数，调用方可能先被唤醒
+        long deadline = System.currentTimeMillis() + 1000;
+        while (policy.getWinCount() <= wins && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(policy.getWinCount() > wins, "对冲请求没有胜出");
+    }
+
+    @Test
+    public void test_budgetLimitsHedges() throws Exception {
+        ConsumerBeanProxy handler = handler();
+        Quote quote = RpcTestSupport.proxy(Quote.class, handler);
+        HedgePolicy policy = handler.getHedgePolicy(Quote.class.getMethod("limited", String.class));
+
+        for (int i = 0; i < WARMUP; i++) {
+            quote.limited("warm-" + i);
+        }
+        // 每个原请求都比等待时间慢，但对冲请求数不超过调用数的 10%
+        int calls = 50;
+        for (int i = 0; i < calls; i++) {
+            assertEquals("quote-slow-limited-" + i, quote.limited("slow-limited-" + i));
+        }
+        long hedged = policy.getHedgedCount();
+        assertTrue(hedged > 0, "没有发出对冲请求");
+        assertTrue(hedged <= (WARMUP + calls) * 10 / 100, "对冲请求超过预算: " + hedged);
+    }
+
+    private static ConsumerBeanProxy handler() {
+        return RpcTestSupport.handler(Quote.class, SerializerFactory.getDefault().getName(), LocalInvoker.MODE_NONE,
+                servers[0].getPort(), servers[1].getPort());
+    }
+}
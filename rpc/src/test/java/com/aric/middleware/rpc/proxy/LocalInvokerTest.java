@@ -0,0 +1,138 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.config.LocalServer;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 服务提供方就在当前 JVM 中时直接调用：direct 传递引用，copy 传递副本，都不建立连接
+ * 服务提供方的端口上没有真实的服务端，请求一旦走网络就会失败
+ */
+public class LocalInvokerTest {
+    // 没有服务端监听的端口
+    private static final int PORT = RpcTestSupport.freePort();
+
+    public static class Box {
+        private List<String> items = new ArrayList<>();
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+    }
+
+    public interface Packer {
+        Box tag(Box box);
+
+        CompletableFuture<Box> tagAsync(Box box);
+
+        void fail(String message);
+    }
+
+    public static class PackerImpl implements Packer {
+        @Override
+        public Box tag(Box box) {
+            box.getItems().add("tagged");
+            return box;
+        }
+
+        @Override
+        public CompletableFuture<Box> tagAsync(Box box) {
+            return CompletableFuture.completedFuture(tag(box));
+        }
+
+        @Override
+        public void fail(String message) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static String previousHost;
+    private static int previousPort;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Packer.class.getName(), new PackerImpl());
+        previousHost = LocalServer.getHost();
+        previousPort = LocalServer.getPort();
+        LocalServer.setHost(RpcTestSupport.HOST);
+        LocalServer.setPort(PORT);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        LocalServer.setHost(previousHost);
+        LocalServer.setPort(previousPort);
+        ClientTransport.shutdown();
+    }
+
+    @Test
+    public void test_directPassesReferences() throws Exception {
+        Packer packer = proxy(LocalInvoker.MODE_DIRECT);
+        Box box = new Box();
+        Box result = packer.tag(box);
+        assertSame(box, result);
+        assertEquals(List.of("tagged"), box.getItems());
+
+        Box async = packer.tagAsync(box).get(1, TimeUnit.SECONDS);
+        assertSame(box, async);
+        assertEquals(List.of("tagged", "tagged"), box.getItems());
+        assertNoConnection();
+    }
+
+    @Test
+    public void test_copyPassesValues() throws Exception {
+        Packer packer = proxy(LocalInvoker.MODE_COPY);
+        Box box = new Box();
+        box.getItems().add("origin");
+        Box result = packer.tag(box);
+        // 和远程调用一样，服务方法修改的是参数的副本，返回的也是结果的副本
+        assertNotSame(box, result);
+        assertEquals(List.of("origin"), box.getItems());
+        assertEquals(List.of("origin", "tagged"), result.getItems());
+
+        Box async = packer.tagAsync(box).get(1, TimeUnit.SECONDS);
+        assertNotSame(box, async);
+        assertEquals(List.of("origin"), box.getItems());
+        assertNoConnection();
+    }
+
+    @Test
+    public void test_errorsMatchRemote() {
+        for (String mode : new String[]{LocalInvoker.MODE_DIRECT, LocalInvoker.MODE_COPY}) {
+            RpcException e = assertThrows(RpcException.class, () -> proxy(mode).fail("boom"), mode);
+            assertEquals(RpcErrorCode.SERVER_ERROR.getCode(), e.getCode(), mode);
+            assertTrue(e.getMessage().contains("boom"), e.getMessage());
+        }
+        assertNoConnection();
+    }
+
+    private static void assertNoConnection() {
+        assertFalse(ClientTransport.getPools().containsKey(RpcTestSupport.HOST + ":" + PORT), "进程内调用建立了连接");
+    }
+
+    private static Packer proxy(String local) {
+        return RpcTestSupport.proxy(Packer.class, PORT, local);
+    }
+}
@@ -0,0 +1,53 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.common.RpcErrorCode;
+import com.aric.middleware.rpc.common.RpcException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryPolicyTest {
+    private static final RpcException BUSY = new RpcException(RpcErrorCode.SERVER_BUSY);
+
+    @Test
+    public void test_retryOnlyRetryableErrors() {
+        RetryPolicy policy = new RetryPolicy(2, 10, 20);
+        assertTrue(policy.shouldRetry(1, new IOException("closed")));
+        assertTrue(policy.shouldRetry(2, BUSY));
+        assertFalse(policy.shouldRetry(3, BUSY));
+        assertFalse(policy.shouldRetry(1, new RpcException(RpcErrorCode.SERVER_ERROR)));
+        assertEquals(2, policy.getRetriedCount());
+    }
+
+    @Test
+    public void test_budgetLimitsRetries() {
+        RetryPolicy policy = new RetryPolicy(1, 10, 20);
+        // 初始的 10 个令牌用完之后，每 10 次成功才能再重试一次
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.shouldRetry(1, BUSY));
+        }
+        assertFalse(policy.shouldRetry(1, BUSY));
+        for (int i = 0; i < 10; i++) {
+            policy.onSuccess(1);
+        }
+        assertTrue(policy.shouldRetry(1, BUSY));
+        assertFalse(policy.shouldRetry(1, BUSY));
+        assertEquals(2, policy.getBudgetExhaustedCount());
+        assertEquals(10, policy.getFirstSuccessCount());
+    }
+
+    @Test
+    public void test_jitteredBackoff() {
+        RetryPolicy policy = new RetryPolicy(3, 10, 20);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoff(1);
+            long third = policy.backoff(3);
+            assertTrue(first >= 10 && first <= 20, "first=" + first);
+            assertTrue(third >= 40 && third <= 80, "third=" + third);
+        }
+    }
+}
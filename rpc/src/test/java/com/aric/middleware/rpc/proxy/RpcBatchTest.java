@@ -0,0 +1,148 @@
+package com.aric.middleware.rpc.proxy;
+
+import com.aric.middleware.rpc.RpcTestSupport;
+import com.aric.middleware.rpc.common.RpcException;
+import com.aric.middleware.rpc.network.ClientTransport;
+import com.aric.middleware.rpc.network.MethodDictionary;
+import com.aric.middleware.rpc.network.ServerSocket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批量调用经过真实的连接：结果按位置回到各自的 future，单个调用出错不影响同一批的其他调用
+ */
+public class RpcBatchTest {
+    public interface Inventory {
+        String echo(String value);
+
+        int check(int amount);
+
+        void log(String message);
+
+        CompletableFuture<String> echoAsync(String value);
+    }
+
+    public static class InventoryImpl implements Inventory {
+        private final AtomicInteger invoked = new AtomicInteger();
+        private final ConcurrentLinkedQueue<String> logs = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public String echo(String value) {
+            invoked.incrementAndGet();
+            return value;
+        }
+
+        @Override
+        public int check(int amount) {
+            invoked.incrementAndGet();
+            if (amount < 0) {
+                throw new IllegalArgumentException("库存不足: " + amount);
+            }
+            return amount;
+        }
+
+        @Override
+        public void log(String message) {
+            invoked.incrementAndGet();
+            logs.add(message);
+        }
+
+        @Override
+        public CompletableFuture<String> echoAsync(String value) {
+            return CompletableFuture.completedFuture(value);
+        }
+    }
+
+    private static final InventoryImpl impl = new InventoryImpl();
+    private static ServerSocket server;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        MethodDictionary.export(Inventory.class.getName(), impl);
+        server = RpcTestSupport.startServer();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        ClientTransport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void test_resultsByPosition() throws Exception {
+        Inventory inventory = proxy();
+        RpcBatch batch = new RpcBatch();
+        List<CompletableFuture<String>> echoes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String value = "v-" + i;
+            echoes.add(batch.call(() -> inventory.echo(value)));
+        }
+        CompletableFuture<Integer> checked = batch.call(() -> inventory.check(7));
+        CompletableFuture<Void> logged = batch.run(() -> inventory.log("done"));
+        assertEquals(102, batch.size());
+
+        // 记录期间不发出请求
+        int before = impl.invoked.get();
+        assertTrue(echoes.stream().noneMatch(CompletableFuture::isDone));
+
+        batch.execute().get(5, TimeUnit.SECONDS);
+        assertEquals(before + 102, impl.invoked.get());
+        for (int i = 0; i < echoes.size(); i++) {
+            assertEquals("v-" + i, echoes.get(i).get());
+        }
+        assertEquals(7, checked.get());
+        assertNull(logged.get());
+        assertTrue(impl.logs.contains("done"));
+    }
+
+    @Test
+    public void test_errorOnlyFailsItsOwnCall() throws Exception {
+        Inventory inventory = proxy();
+        RpcBatch batch = new RpcBatch();
+        CompletableFuture<String> first = batch.call(() -> inventory.echo("first"));
+        CompletableFuture<Integer> failed = batch.call(() -> inventory.check(-1));
+        CompletableFuture<String> last = batch.call(() -> inventory.echo("last"));
+
+        // 整批仍然正常完成，只有出错的调用失败
+        batch.execute().get(5, TimeUnit.SECONDS);
+        assertEquals("first", first.get());
+        assertEquals("last", last.get());
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertInstanceOf(RpcException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().contains("库存不足"), e.getCause().getMessage());
+    }
+
+    @Test
+    public void test_rejectMisuse() {
+        Inventory inventory = proxy();
+        RpcBatch batch = new RpcBatch();
+        // 异步返回的方法不能放进批量调用
+        assertThrows(IllegalStateException.class, () -> batch.call(() -> inventory.echoAsync("a")));
+        // 没有发起 rpc 调用
+        assertThrows(IllegalStateException.class, () -> batch.call(() -> "local"));
+
+        batch.call(() -> inventory.echo("a"));
+        batch.execute().join();
+        assertThrows(IllegalStateException.class, batch::execute);
+        assertThrows(IllegalStateException.class, () -> batch.call(() -> inventory.echo("b")));
+    }
+
+    private static Inventory proxy() {
+        return RpcTestSupport.proxy(Inventory.class, server.getPort(), LocalInvoker.MODE_NONE);
+    }
+}
@@ -0,0 +1,256 @@
+package com.aric.middleware.rpc.register;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试用的进程内 Redis，只实现注册中心用到的命令，RESP 协议
+ */
+public class FakeRedisServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+    // 字符串值和过期时间，读取时才检查过期
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final Map<String, Long> expireAt = new ConcurrentHashMap<>();
+    private final Map<String, List<Connection>> subscribers = new ConcurrentHashMap<>();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    public FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        Thread acceptor = new Thread(this::accept, "fake-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public Set<String> members(String key) {
+        return sets.getOrDefault(key, Set.of());
+    }
+
+    public String get(String key) {
+        Long deadline = expireAt.get(key);
+        if (null != deadline && deadline <= System.currentTimeMillis()) {
+            values.remove(key);
+            expireAt.remove(key);
+        }
+        return values.get(key);
+    }
+
+    /**
+     * 断开所有客户端连接，模拟注册中心重启
+     */
+    public void dropConnections() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Connection connection = new Connection(serverSocket.accept());
+                connections.add(connection);
+                Thread thread = new Thread(connection, "fake-redis-conn");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private Object execute(Connection connection, List<String> command) {
+        String name = command.get(0).toUpperCase();
+        switch (name) {
+            case "PING":
+                return "+PONG";
+            case "SADD": {
+                Set<String> set = sets.computeIfAbsent(command.get(1), k -> ConcurrentHashMap.newKeySet());
+                long added = 0;
+                for (String member : command.subList(2, command.size())) {
+                    if (set.add(member)) added++;
+                }
+                return added;
+            }
+            case "SREM": {
+                Set<String> set = sets.getOrDefault(command.get(1), ConcurrentHashMap.newKeySet());
+                long removed = 0;
+                for (String member : command.subList(2, command.size())) {
+                    if (set.remove(member)) removed++;
+                }
+                return removed;
+            }
+            case "SETEX":
+                values.put(command.get(1), command.get(3));
+                expireAt.put(command.get(1), System.currentTimeMillis() + Long.parseLong(command.get(2)) * 1000);
+                return "+OK";
+            case "GET":
+                return new Bulk(get(command.get(1)));
+            case "MGET": {
+                List<String> result = new ArrayList<>();
+                for (String key : command.subList(1, command.size())) {
+                    result.add(get(key));
+                }
+                return result;
+            }
+            case "DEL": {
+                long removed = 0;
+                for (String key : command.subList(1, command.size())) {
+                    expireAt.remove(key);
+                    if (null != values.remove(key) | null != sets.remove(key)) removed++;
+                }
+                return removed;
+            }
+            case "SMEMBERS":
+                return new ArrayList<>(members(command.get(1)));
+            case "PUBLISH": {
+                List<Connection> list = subscribers.getOrDefault(command.get(1), List.of());
+                for (Connection subscriber : list) {
+                    subscriber.send(List.of("message", command.get(1), command.get(2)));
+                }
+                return (long) list.size();
+            }
+            case "SUBSCRIBE":
+                for (String channel : command.subList(1, command.size())) {
+                    subscribers.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(connection);
+                    connection.send(List.of("subscribe", channel, 1L));
+                }
+                return null;
+            case "UNSUBSCRIBE":
+                for (Map.Entry<String, List<Connection>> entry : subscribers.entrySet()) {
+                    if (entry.getValue().remove(connection)) {
+                        connection.send(List.of("unsubscribe", entry.getKey(), 0L));
+                    }
+                }
+                return null;
+            default:
+                return "-ERR unknown command '" + name + "'";
+        }
+    }
+
+    private record Bulk(String value) {
+    }
+
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<String> command = readCommand();
+                    if (null == command) {
+                        break;
+                    }
+                    Object reply = execute(this, command);
+                    if (null != reply) {
+                        send(reply);
+                    }
+                }
+            } catch (IOException ignore) {
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            subscribers.values().forEach(list -> list.remove(this));
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+        private List<String> readCommand() throws IOException {
+            String line = readLine();
+            if (null == line) {
+                return null;
+            }
+            int count = Integer.parseInt(line.substring(1));
+            List<String> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine().substring(1));
+                byte[] bytes = in.readNBytes(length + 2);
+                command.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return command;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\r') {
+                    in.read();
+                    return builder.toString();
+                }
+                builder.append((char) b);
+            }
+            return null;
+        }
+
+        synchronized void send(Object reply) {
+            try {
+                write(reply);
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void write(Object reply) throws IOException {
+            if (reply instanceof Long) {
+                out.write((":" + reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+            } else if (reply instanceof List) {
+                List<?> list = (List<?>) reply;
+                out.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for (Object item : list) {
+                    write(item instanceof String || null == item ? new Bulk((String) item) : item);
+                }
+            } else if (reply instanceof Bulk) {
+                String value = ((Bulk) reply).value();
+                if (null == value) {
+                    out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            } else {
+                // +OK、-ERR 这类单行回复
+                out.write((reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.aric.middleware.rpc.register;
+
+import com.alibaba.fastjson.JSON;
+import com.aric.middleware.rpc.config.ProviderConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import redis.clients.jedis.Jedis;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RedisRegistryCenterTest {
+    private static final String NOZZLE = "com.aric.demo.HelloService";
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    public void tearDown() {
+        RedisRegistryCenter.shutdown();
+    }
+
+    @Test
+    public void test_snapshotRoundTrip() {
+        Path snapshot = dir.resolve("registry.json");
+        RegistryCache cache = new RegistryCache(snapshot);
+        assertTrue(cache.update(NOZZLE, List.of(provider(7001), provider(7002))));
+        assertTrue(Files.exists(snapshot));
+        // 内容相同、顺序不同不算变更
+        assertFalse(cache.update(NOZZLE, List.of(provider(7002), provider(7001))));
+
+        RegistryCache loaded = new RegistryCache(snapshot);
+        assertNull(loaded.get(NOZZLE));
+        loaded.load();
+        assertEquals(Set.of(provider(7001), provider(7002)), new HashSet<>(loaded.get(NOZZLE)));
+    }
+
+    @Test
+    public void test_pushUpdatesToLocalCache() throws Exception {
+        Path snapshot = dir.resolve("registry.json");
+        try (FakeRedisServer redis = new FakeRedisServer()) {
+            RedisRegistryCenter.init("127.0.0.1", redis.getPort(), snapshot.toString(), 1);
+            assertTrue(RedisRegistryCenter.getProviders(NOZZLE).isEmpty());
+
+            RedisRegistryCenter.addProvider(provider(7001));
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 1);
+            RedisRegistryCenter.addProvider(provider(7002));
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 2);
+
+            // 快照在订阅线程上更新缓存之后写入
+            await(() -> {
+                RegistryCache loaded = new RegistryCache(snapshot);
+                loaded.load();
+                return null != loaded.get(NOZZLE) && loaded.get(NOZZLE).size() == 2;
+            });
+        }
+    }
+
+    @Test
+    public void test_startFromSnapshotWhenRegistryDown() throws Exception {
+        Path snapshot = dir.resolve("registry.json");
+        new RegistryCache(snapshot).update(NOZZLE, List.of(provider(7001)));
+
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        RedisRegistryCenter.init("127.0.0.1", deadPort, snapshot.toString(), 1);
+        assertEquals(List.of(provider(7001)), RedisRegistryCenter.getProviders(NOZZLE));
+    }
+
+    @Test
+    public void test_resyncAfterReconnect() throws Exception {
+        try (FakeRedisServer redis = new FakeRedisServer()) {
+            RedisRegistryCenter.init("127.0.0.1", redis.getPort(), null, 1);
+            RedisRegistryCenter.addProvider(provider(7001));
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 1);
+
+            // 订阅断开期间发生的变更没有通知，重新订阅后要补上
+            redis.dropConnections();
+            try (Jedis jedis = new Jedis("127.0.0.1", redis.getPort())) {
+                register(jedis, provider(7002), 10);
+            }
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 2);
+        }
+    }
+
+    @Test
+    public void test_expiredProviderIsRemoved() throws Exception {
+        try (FakeRedisServer redis = new FakeRedisServer()) {
+            RedisRegistryCenter.init("127.0.0.1", redis.getPort(), null, 1);
+            RedisRegistryCenter.addProvider(provider(7001));
+
+            // 另一个进程注册之后崩溃，没有心跳续租
+            try (Jedis jedis = new Jedis("127.0.0.1", redis.getPort())) {
+                register(jedis, provider(7002), 1);
+            }
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 2);
+
+            await(() -> RedisRegistryCenter.getProviders(NOZZLE).equals(List.of(provider(7001))));
+            assertEquals(Set.of(JSON.toJSONString(provider(7001))), redis.members(NOZZLE));
+        }
+    }
+
+    @Test
+    public void test_reRegisterReplacesStaleMember() throws Exception {
+        try (FakeRedisServer redis = new FakeRedisServer()) {
+            RedisRegistryCenter.init("127.0.0.1", redis.getPort(), null, 1);
+            try (Jedis jedis = new Jedis("127.0.0.1", redis.getPort())) {
+                register(jedis, provider(7001), 10);
+                await(() -> RedisRegistryCenter.getProviders(NOZZLE).size() == 1);
+
+                // 同一地址的服务提供方以新的权重重启，旧的成员还在集合中
+                ProviderConfig restarted = provider(7001);
+                restarted.setWeight(50);
+                register(jedis, restarted, 10);
+                await(() -> RedisRegistryCenter.getProviders(NOZZLE).equals(List.of(restarted)));
+                assertEquals(Set.of(JSON.toJSONString(restarted)), redis.members(NOZZLE));
+            }
+        }
+    }
+
+    @Test
+    public void test_heartbeatRenewsLease() throws Exception {
+        try (FakeRedisServer redis = new FakeRedisServer()) {
+            RedisRegistryCenter.init("127.0.0.1", redis.getPort(), null, 1);
+            RedisRegistryCenter.addProvider(provider(7001));
+
+            Thread.sleep(2500);
+            assertEquals(List.of(provider(7001)), RedisRegistryCenter.getProviders(NOZZLE));
+            assertNotNull(redis.get(RedisRegistryCenter.leaseKey(provider(7001))));
+
+            // 被其他消费者误判过期移出集合后，下一次心跳重新加入
+            try (Jedis jedis = new Jedis("127.0.0.1", redis.getPort())) {
+                jedis.srem(NOZZLE, JSON.toJSONString(provider(7001)));
+            }
+            await(() -> redis.members(NOZZLE).size() == 1);
+
+            RedisRegistryCenter.shutdown();
+            assertTrue(redis.members(NOZZLE).isEmpty());
+            assertNull(redis.get(RedisRegistryCenter.leaseKey(provider(7001))));
+        }
+    }
+
+    private static void register(Jedis jedis, ProviderConfig provider, int leaseSeconds) {
+        String member = JSON.toJSONString(provider);
+        jedis.setex(RedisRegistryCenter.leaseKey(provider), leaseSeconds, member);
+        jedis.sadd(NOZZLE, member);
+        jedis.publish(RedisRegistryCenter.CHANNEL, NOZZLE);
+    }
+
+    private static ProviderConfig provider(int port) {
+        ProviderConfig provider = new ProviderConfig();
+        provider.setNozzle(NOZZLE);
+        provider.setRef("helloService");
+        provider.setHost("127.0.0.1");
+        provider.setPort(port);
+        return provider;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(20);
+        }
+    }
+}
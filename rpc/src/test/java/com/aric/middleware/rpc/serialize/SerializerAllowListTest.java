@@ -0,0 +1,86 @@
+package com.aric.middleware.rpc.serialize;
+
+import com.aric.middleware.rpc.network.Response;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.awt.Point;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * kryo 和 json 按帧体中的类型名创建对象，只能创建 JDK 常用类型和允许列表中的类型
+ */
+public class SerializerAllowListTest {
+
+    @Test
+    public void test_allowedTypes() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("amount", new BigDecimal("1.50"));
+        map.put("time", new Date(1000));
+        List<Object> result = new ArrayList<>();
+        result.add(map);
+        result.add(new Response());
+
+        for (String name : new String[]{"kryo", "json"}) {
+            Response response = new Response();
+            response.setResult(result);
+            Response copy = roundTrip(SerializerFactory.get(name), response);
+            assertEquals(2, ((List<?>) copy.getResult()).size(), name);
+            assertEquals(Response.class, ((List<?>) copy.getResult()).get(1).getClass(), name);
+        }
+    }
+
+    @Test
+    public void test_kryoRejectsUnknownType() {
+        Response response = new Response();
+        response.setResult(new AntPathMatcher());
+        Exception e = assertThrows(Exception.class, () -> roundTrip(SerializerFactory.get("kryo"), response));
+        assertTrue(e.getMessage().contains("不允许反序列化的类型: " + AntPathMatcher.class.getName()), e.getMessage());
+    }
+
+    @Test
+    public void test_jsonRejectsUnknownType() {
+        String json = "{\"@type\":\"" + Response.class.getName() + "\",\"result\":{\"@type\":\"" + AntPathMatcher.class.getName() + "\"}}";
+        ByteBuf buf = Unpooled.copiedBuffer(json, StandardCharsets.UTF_8);
+        try {
+            Exception e = assertThrows(Exception.class, () -> SerializerFactory.get("json").deserialize(buf, buf.readableBytes(), Response.class));
+            assertTrue(e.getMessage().contains("autoType is not support. " + AntPathMatcher.class.getName()), e.getMessage());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void test_allowPrefix() throws Exception {
+        // 只允许 Point，不影响上面对 AntPathMatcher 的检查
+        SerializerFactory.allow(Point.class.getName());
+        Response response = new Response();
+        response.setResult(new Point(3, 4));
+        for (String name : new String[]{"kryo", "json"}) {
+            Response copy = roundTrip(SerializerFactory.get(name), response);
+            assertEquals(new Point(3, 4), copy.getResult(), name);
+        }
+    }
+
+    private static Response roundTrip(Serializer serializer, Response response) throws Exception {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            serializer.serialize(response, buf);
+            return serializer.deserialize(buf, buf.readableBytes(), Response.class);
+        } finally {
+            buf.release();
+        }
+    }
+}